@@ -0,0 +1,232 @@
+package com.ryanpmartz.lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// decodes what AstWriter encoded, straight from a (usually memory-mapped)
+// buffer. Malformed input ends in a RuntimeException such as a
+// BufferUnderflowException, which ProgramCache treats like a missing entry.
+final class AstReader {
+
+	private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+	private final ByteBuffer in;
+	private final List<String> strings = new ArrayList<>();
+	private final List<Stmt.Var> declarations = new ArrayList<>();
+	private int line = 0;
+	private String module = null;
+
+	AstReader(ByteBuffer in) {
+		this.in = in;
+		strings.add(null);
+	}
+
+	List<Stmt> statements() {
+		int count = varint();
+		List<Stmt> statements = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			statements.add(statement());
+		}
+		return statements;
+	}
+
+	int varint() {
+		int zigzag = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = in.get();
+			zigzag |= (b & 0x7f) << shift;
+			if (b >= 0) {
+				break;
+			}
+		}
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+
+	String string() {
+		int number = varint();
+		if (number < strings.size()) {
+			return strings.get(number);
+		}
+		if (number != strings.size()) {
+			throw new IllegalStateException("String " + number + " out of order.");
+		}
+
+		byte[] bytes = new byte[varint()];
+		in.get(bytes);
+		String value = new String(bytes, StandardCharsets.UTF_8);
+		strings.add(value);
+		return value;
+	}
+
+	void bytes(byte[] bytes) {
+		in.get(bytes);
+	}
+
+	private Object value() {
+		byte tag = in.get();
+		switch (tag) {
+			case AstTag.NIL:
+				return null;
+			case AstTag.NUMBER:
+				return in.getDouble();
+			case AstTag.STRING:
+				return string();
+			case AstTag.TRUE:
+				return true;
+			case AstTag.FALSE:
+				return false;
+			default:
+				throw new IllegalStateException("Unknown value tag " + tag + ".");
+		}
+	}
+
+	private Token token() {
+		TokenType type = TOKEN_TYPES[in.get()];
+		String lexeme = string();
+		Object literal = value();
+		line += varint();
+
+		int symbol;
+		byte kind = in.get();
+		switch (kind & ~AstTag.MODULE_CHANGES) {
+			case 0:
+				symbol = Symbols.NONE;
+				break;
+			case 1:
+				symbol = Symbols.intern(lexeme);
+				break;
+			default:
+				symbol = Symbols.intern(string());
+		}
+
+		if ((kind & AstTag.MODULE_CHANGES) != 0) {
+			module = string();
+		}
+		return new Token(type, lexeme, literal, line, symbol, module);
+	}
+
+	private List<Token> tokens() {
+		int count = varint();
+		List<Token> tokens = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			tokens.add(token());
+		}
+		return tokens;
+	}
+
+	private int[] ints() {
+		int length = varint();
+		if (length < 0) {
+			return null;
+		}
+
+		int[] values = new int[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = varint();
+		}
+		return values;
+	}
+
+	private List<Expr> expressions() {
+		int count = varint();
+		List<Expr> exprs = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			exprs.add(expression());
+		}
+		return exprs;
+	}
+
+	private Expr expression() {
+		byte tag = in.get();
+		switch (tag) {
+			case AstTag.NONE:
+				return null;
+			case AstTag.ASSIGN: {
+				Expr.Assign assign = new Expr.Assign(token(), expression());
+				assign.storage = varint();
+				assign.slot = varint();
+				return assign;
+			}
+			case AstTag.BINARY:
+				return new Expr.Binary(expression(), token(), expression());
+			case AstTag.CALL:
+				return new Expr.Call(expression(), token(), expressions());
+			case AstTag.GROUPING:
+				return new Expr.Grouping(expression());
+			case AstTag.INDEX:
+				return new Expr.Index(expression(), token(), expression());
+			case AstTag.LIST_LITERAL:
+				return new Expr.ListLiteral(expressions());
+			case AstTag.LITERAL:
+				return new Expr.Literal(value());
+			case AstTag.LOGICAL:
+				return new Expr.Logical(expression(), token(), expression());
+			case AstTag.SET_INDEX:
+				return new Expr.SetIndex(expression(), token(), expression(), expression());
+			case AstTag.UNARY:
+				return new Expr.Unary(token(), expression());
+			case AstTag.VARIABLE: {
+				Expr.Variable variable = new Expr.Variable(token());
+				variable.storage = varint();
+				variable.slot = varint();
+				int declaration = varint();
+				variable.declaration = declaration < 0 ? null : declarations.get(declaration);
+				return variable;
+			}
+			default:
+				throw new IllegalStateException("Unknown expression tag " + tag + ".");
+		}
+	}
+
+	private Stmt statement() {
+		byte tag = in.get();
+		switch (tag) {
+			case AstTag.NONE:
+				return null;
+			case AstTag.BLOCK: {
+				Stmt.Block block = new Stmt.Block(statements());
+				block.stackSize = varint();
+				return block;
+			}
+			case AstTag.EXPRESSION:
+				return new Stmt.Expression(expression());
+			case AstTag.FUNCTION: {
+				Stmt.Function function = new Stmt.Function(token(), tokens(), statements());
+				function.storage = varint();
+				function.slot = varint();
+				function.stackSize = varint();
+				function.capturedParams = ints();
+				function.captures = ints();
+				return function;
+			}
+			case AstTag.IF:
+				return new Stmt.If(expression(), statement(), statement());
+			case AstTag.IMPORT:
+				return new Stmt.Import(token(), token());
+			case AstTag.PRINT:
+				return new Stmt.Print(expression());
+			case AstTag.RETURN: {
+				Stmt.Return stmt = new Stmt.Return(token(), expression());
+				stmt.tailCall = in.get() != 0;
+				return stmt;
+			}
+			case AstTag.VAR: {
+				// numbered before its initializer, like AstWriter does
+				int number = declarations.size();
+				declarations.add(null);
+				Stmt.Var var = new Stmt.Var(token(), expression());
+				var.storage = varint();
+				var.slot = varint();
+				var.reassigned = in.get() != 0;
+				declarations.set(number, var);
+				return var;
+			}
+			case AstTag.WHILE:
+				return new Stmt.While(expression(), statement());
+			default:
+				throw new IllegalStateException("Unknown statement tag " + tag + ".");
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package com.ryanpmartz.lox;
+
+// the byte that starts each node AstWriter writes, telling AstReader which
+// class to read; NONE is a missing node, like an `if` without an `else`
+final class AstTag {
+
+	static final byte NONE = 0;
+
+	static final byte ASSIGN = 1;
+	static final byte BINARY = 2;
+	static final byte CALL = 3;
+	static final byte GROUPING = 4;
+	static final byte INDEX = 5;
+	static final byte LIST_LITERAL = 6;
+	static final byte LITERAL = 7;
+	static final byte LOGICAL = 8;
+	static final byte SET_INDEX = 9;
+	static final byte UNARY = 10;
+	static final byte VARIABLE = 11;
+
+	static final byte BLOCK = 20;
+	static final byte EXPRESSION = 21;
+	static final byte FUNCTION = 22;
+	static final byte IF = 23;
+	static final byte IMPORT = 24;
+	static final byte PRINT = 25;
+	static final byte RETURN = 26;
+	static final byte VAR = 27;
+	static final byte WHILE = 28;
+
+	// what follows a LITERAL tag, and a token's literal
+	static final byte NIL = 0;
+	static final byte NUMBER = 1;
+	static final byte STRING = 2;
+	static final byte TRUE = 3;
+	static final byte FALSE = 4;
+
+	// or'ed into the byte after a token's line, which says how its symbol is
+	// named, when the token's module follows
+	static final byte MODULE_CHANGES = 4;
+
+	private AstTag() {
+	}
+}
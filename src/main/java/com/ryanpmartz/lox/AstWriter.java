@@ -0,0 +1,335 @@
+package com.ryanpmartz.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// encodes a resolved program for ProgramCache, in the form AstReader decodes.
+// A node is its AstTag, its fields in declaration order and then whatever the
+// Resolver worked out about it; what only exists at runtime (specialized
+// nodes, cached cells, compiled code) isn't written. Ints are varints, zigzagged
+// since storage kinds are negative. A string is written the first time it comes
+// up and referred to by number after that. A token keeps its line, its module
+// and the name of its symbol, which Modules may have renamed; a local variable
+// use refers to its declaration by the order declarations were written in.
+final class AstWriter implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+	// number of each string written so far; 0 is null
+	private final Map<String, Integer> strings = new HashMap<>();
+	private final Map<Stmt.Var, Integer> declarations = new HashMap<>();
+	// lines are written as the difference from the previous token's, and
+	// modules only where they differ from it
+	private int line = 0;
+	private String module = null;
+
+	byte[] toByteArray() {
+		return out.toByteArray();
+	}
+
+	void statements(List<Stmt> statements) {
+		varint(statements.size());
+		for (Stmt statement : statements) {
+			statement(statement);
+		}
+	}
+
+	private void statement(Stmt stmt) {
+		if (stmt == null) {
+			out.write(AstTag.NONE);
+		} else {
+			stmt.accept(this);
+		}
+	}
+
+	private void expression(Expr expr) {
+		if (expr == null) {
+			out.write(AstTag.NONE);
+		} else {
+			expr.accept(this);
+		}
+	}
+
+	private void expressions(List<Expr> exprs) {
+		varint(exprs.size());
+		for (Expr expr : exprs) {
+			expression(expr);
+		}
+	}
+
+	void varint(int value) {
+		int zigzag = (value << 1) ^ (value >> 31);
+		while ((zigzag & ~0x7f) != 0) {
+			out.write((zigzag & 0x7f) | 0x80);
+			zigzag >>>= 7;
+		}
+		out.write(zigzag);
+	}
+
+	void string(String value) {
+		if (value == null) {
+			varint(0);
+			return;
+		}
+
+		Integer number = strings.get(value);
+		if (number != null) {
+			varint(number);
+			return;
+		}
+
+		number = strings.size() + 1;
+		strings.put(value, number);
+		varint(number);
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		varint(bytes.length);
+		out.write(bytes, 0, bytes.length);
+	}
+
+	void bytes(byte[] bytes) {
+		out.write(bytes, 0, bytes.length);
+	}
+
+	private void number(double value) {
+		long bits = Double.doubleToRawLongBits(value);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			out.write((int) (bits >>> shift));
+		}
+	}
+
+	private void value(Object value) {
+		if (value == null) {
+			out.write(AstTag.NIL);
+		} else if (value instanceof Double) {
+			out.write(AstTag.NUMBER);
+			number((double) value);
+		} else if (value instanceof String) {
+			out.write(AstTag.STRING);
+			string((String) value);
+		} else {
+			out.write((Boolean) value ? AstTag.TRUE : AstTag.FALSE);
+		}
+	}
+
+	private void token(Token token) {
+		out.write(token.type.ordinal());
+		string(token.lexeme);
+		value(token.literal);
+		varint(token.line - line);
+		line = token.line;
+
+		// most symbols are named like their token, unless Modules renamed them;
+		// MODULE_CHANGES is or'ed in when the module follows
+		boolean moduleChanges = !Objects.equals(token.module, module);
+		int changes = moduleChanges ? AstTag.MODULE_CHANGES : 0;
+		if (token.symbol == Symbols.NONE) {
+			out.write(changes);
+		} else if (Symbols.name(token.symbol).equals(token.lexeme)) {
+			out.write(changes | 1);
+		} else {
+			out.write(changes | 2);
+			string(Symbols.name(token.symbol));
+		}
+
+		if (moduleChanges) {
+			string(token.module);
+			module = token.module;
+		}
+	}
+
+	private void ints(int[] values) {
+		if (values == null) {
+			varint(-1);
+			return;
+		}
+
+		varint(values.length);
+		for (int value : values) {
+			varint(value);
+		}
+	}
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign expr) {
+		out.write(AstTag.ASSIGN);
+		token(expr.name);
+		expression(expr.value);
+		varint(expr.storage);
+		varint(expr.slot);
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary expr) {
+		out.write(AstTag.BINARY);
+		expression(expr.left);
+		token(expr.operator);
+		expression(expr.right);
+		return null;
+	}
+
+	@Override
+	public Void visitCallExpr(Expr.Call expr) {
+		out.write(AstTag.CALL);
+		expression(expr.callee);
+		token(expr.paren);
+		expressions(expr.arguments);
+		return null;
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping expr) {
+		out.write(AstTag.GROUPING);
+		expression(expr.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitIndexExpr(Expr.Index expr) {
+		out.write(AstTag.INDEX);
+		expression(expr.object);
+		token(expr.bracket);
+		expression(expr.index);
+		return null;
+	}
+
+	@Override
+	public Void visitListLiteralExpr(Expr.ListLiteral expr) {
+		out.write(AstTag.LIST_LITERAL);
+		expressions(expr.elements);
+		return null;
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal expr) {
+		out.write(AstTag.LITERAL);
+		value(expr.value);
+		return null;
+	}
+
+	@Override
+	public Void visitLogicalExpr(Expr.Logical expr) {
+		out.write(AstTag.LOGICAL);
+		expression(expr.left);
+		token(expr.operator);
+		expression(expr.right);
+		return null;
+	}
+
+	@Override
+	public Void visitSetIndexExpr(Expr.SetIndex expr) {
+		out.write(AstTag.SET_INDEX);
+		expression(expr.object);
+		token(expr.bracket);
+		expression(expr.index);
+		expression(expr.value);
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary expr) {
+		out.write(AstTag.UNARY);
+		token(expr.operator);
+		expression(expr.right);
+		return null;
+	}
+
+	@Override
+	public Void visitVariableExpr(Expr.Variable expr) {
+		out.write(AstTag.VARIABLE);
+		token(expr.name);
+		varint(expr.storage);
+		varint(expr.slot);
+		// a declaration is always resolved, and so written, before its uses
+		varint(expr.declaration == null ? -1 : declarations.getOrDefault(expr.declaration, -1));
+		return null;
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		out.write(AstTag.BLOCK);
+		statements(stmt.statements);
+		varint(stmt.stackSize);
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		out.write(AstTag.EXPRESSION);
+		expression(stmt.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitFunctionStmt(Stmt.Function stmt) {
+		out.write(AstTag.FUNCTION);
+		token(stmt.name);
+		varint(stmt.params.size());
+		for (Token param : stmt.params) {
+			token(param);
+		}
+		statements(stmt.body);
+		varint(stmt.storage);
+		varint(stmt.slot);
+		varint(stmt.stackSize);
+		ints(stmt.capturedParams);
+		ints(stmt.captures);
+		return null;
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		out.write(AstTag.IF);
+		expression(stmt.condition);
+		statement(stmt.thenBranch);
+		statement(stmt.elseBranch);
+		return null;
+	}
+
+	@Override
+	public Void visitImportStmt(Stmt.Import stmt) {
+		out.write(AstTag.IMPORT);
+		token(stmt.keyword);
+		token(stmt.path);
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Stmt.Print stmt) {
+		out.write(AstTag.PRINT);
+		expression(stmt.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		out.write(AstTag.RETURN);
+		token(stmt.keyword);
+		expression(stmt.value);
+		out.write(stmt.tailCall ? 1 : 0);
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		out.write(AstTag.VAR);
+		declarations.put(stmt, declarations.size());
+		token(stmt.name);
+		expression(stmt.initializer);
+		varint(stmt.storage);
+		varint(stmt.slot);
+		out.write(stmt.reassigned ? 1 : 0);
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		out.write(AstTag.WHILE);
+		expression(stmt.condition);
+		statement(stmt.body);
+		return null;
+	}
+}
@@ -0,0 +1,204 @@
+package com.ryanpmartz.lox;
+
+// operator implementation attached to an Expr.Binary site; starts uninitialized,
+// watches the first few executions and then rewrites the site into a node
+// specialized for the operand types it has seen
+abstract class BinaryNode {
+
+	// executions observed before a site commits to a specialization
+	static final int WARMUP = 2;
+
+	abstract Object execute(Expr.Binary site, Object left, Object right);
+
+	static class Uninitialized extends BinaryNode {
+
+		private int executions = 0;
+		private boolean allDoubles = true;
+		private boolean allStrings = true;
+
+		@Override
+		Object execute(Expr.Binary site, Object left, Object right) {
+			allDoubles &= left instanceof Double && right instanceof Double;
+			allStrings &= Interpreter.isString(left) && Interpreter.isString(right);
+
+			if (++executions >= WARMUP) {
+				site.node = specialize(site.operator, allDoubles, allStrings);
+			}
+
+			return Interpreter.binary(site.operator, left, right);
+		}
+
+		private static BinaryNode specialize(Token operator, boolean doubles, boolean strings) {
+			switch (operator.type) {
+				case EQUAL_EQUAL:
+					return new Equal();
+				case BANG_EQUAL:
+					return new NotEqual();
+				case PLUS:
+					if (doubles) return new AddDoubles();
+					if (strings) return new Concat();
+					break;
+				case MINUS:
+					if (doubles) return new SubtractDoubles();
+					break;
+				case STAR:
+					if (doubles) return new MultiplyDoubles();
+					break;
+				case SLASH:
+					if (doubles) return new DivideDoubles();
+					break;
+				case GREATER:
+					if (doubles) return new GreaterDoubles();
+					break;
+				case GREATER_EQUAL:
+					if (doubles) return new GreaterEqualDoubles();
+					break;
+				case LESS:
+					if (doubles) return new LessDoubles();
+					break;
+				case LESS_EQUAL:
+					if (doubles) return new LessEqualDoubles();
+					break;
+			}
+
+			return GENERIC;
+		}
+	}
+
+	// the unspecialized operator; also where a site ends up once a guard has failed
+	static final class Generic extends BinaryNode {
+
+		@Override
+		Object execute(Expr.Binary site, Object left, Object right) {
+			return Interpreter.binary(site.operator, left, right);
+		}
+	}
+
+	private static final BinaryNode GENERIC = new Generic();
+
+	// guard failed: give up on specializing this site for good rather than oscillating
+	static Object deoptimize(Expr.Binary site, Object left, Object right) {
+		site.node = GENERIC;
+		return Interpreter.binary(site.operator, left, right);
+	}
+
+	// operators that only specialize for two numbers; the interpreter can feed
+	// them unboxed operands through Interpreter.evaluateDouble
+	abstract static class Arithmetic extends BinaryNode {
+
+		abstract double apply(double left, double right);
+
+		@Override
+		final Object execute(Expr.Binary site, Object left, Object right) {
+			if (left instanceof Double && right instanceof Double) {
+				return apply((double) left, (double) right);
+			}
+			return deoptimize(site, left, right);
+		}
+	}
+
+	abstract static class Comparison extends BinaryNode {
+
+		abstract boolean test(double left, double right);
+
+		@Override
+		final Object execute(Expr.Binary site, Object left, Object right) {
+			if (left instanceof Double && right instanceof Double) {
+				return test((double) left, (double) right);
+			}
+			return deoptimize(site, left, right);
+		}
+	}
+
+	static final class AddDoubles extends Arithmetic {
+
+		@Override
+		double apply(double left, double right) {
+			return left + right;
+		}
+	}
+
+	static final class SubtractDoubles extends Arithmetic {
+
+		@Override
+		double apply(double left, double right) {
+			return left - right;
+		}
+	}
+
+	static final class MultiplyDoubles extends Arithmetic {
+
+		@Override
+		double apply(double left, double right) {
+			return left * right;
+		}
+	}
+
+	static final class DivideDoubles extends Arithmetic {
+
+		@Override
+		double apply(double left, double right) {
+			return left / right;
+		}
+	}
+
+	static final class GreaterDoubles extends Comparison {
+
+		@Override
+		boolean test(double left, double right) {
+			return left > right;
+		}
+	}
+
+	static final class GreaterEqualDoubles extends Comparison {
+
+		@Override
+		boolean test(double left, double right) {
+			return left >= right;
+		}
+	}
+
+	static final class LessDoubles extends Comparison {
+
+		@Override
+		boolean test(double left, double right) {
+			return left < right;
+		}
+	}
+
+	static final class LessEqualDoubles extends Comparison {
+
+		@Override
+		boolean test(double left, double right) {
+			return left <= right;
+		}
+	}
+
+	static final class Concat extends BinaryNode {
+
+		@Override
+		Object execute(Expr.Binary site, Object left, Object right) {
+			if (Interpreter.isString(left) && Interpreter.isString(right)) {
+				return Rope.concat((CharSequence) left, (CharSequence) right);
+			}
+			return deoptimize(site, left, right);
+		}
+	}
+
+	// equality is defined for every pair of values, so these never need a guard
+	static final class Equal extends BinaryNode {
+
+		@Override
+		Object execute(Expr.Binary site, Object left, Object right) {
+			return Interpreter.isEqual(left, right);
+		}
+	}
+
+	static final class NotEqual extends BinaryNode {
+
+		@Override
+		Object execute(Expr.Binary site, Object left, Object right) {
+			return !Interpreter.isEqual(left, right);
+		}
+	}
+}
@@ -0,0 +1,533 @@
+package com.ryanpmartz.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// translates a resolved syntax tree into bytecode chunks for the VM
+public class BytecodeCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+	private static final int MAX_LOCALS = 256;
+	private static final int MAX_UPVALUES = 256;
+
+	private FunctionState current;
+	// where the code being emitted came from, for the chunk's line and module tables
+	private int line = 0;
+	private String module = null;
+
+	public VmFunction compile(List<Stmt> statements) {
+		current = new FunctionState(null, new VmFunction(null, 0));
+		for (Stmt statement : statements) {
+			compile(statement);
+		}
+
+		return endFunction();
+	}
+
+	private void compile(Stmt stmt) {
+		stmt.accept(this);
+	}
+
+	private void compile(Expr expr) {
+		expr.accept(this);
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		beginScope();
+		for (Stmt statement : stmt.statements) {
+			compile(statement);
+		}
+		endScope();
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		compile(stmt.expression);
+		emit(OpCode.POP);
+		return null;
+	}
+
+	@Override
+	public Void visitFunctionStmt(Stmt.Function stmt) {
+		at(stmt.name);
+		// mark the name initialized before compiling the body so it can recurse
+		declareVariable(stmt.name);
+
+		FunctionState function = new FunctionState(current,
+				new VmFunction(stmt.name.lexeme, stmt.params.size()));
+		current = function;
+		beginScope();
+		for (Token param : stmt.params) {
+			declareVariable(param);
+		}
+		for (Stmt statement : stmt.body) {
+			compile(statement);
+		}
+		VmFunction compiled = endFunction();
+
+		at(stmt.name);
+		emit(OpCode.CLOSURE);
+		emitShort(makeConstant(compiled));
+		for (Upvalue upvalue : function.upvalues) {
+			emit(upvalue.isLocal ? 1 : 0);
+			emit(upvalue.index);
+		}
+
+		defineVariable(stmt.name);
+		return null;
+	}
+
+	@Override
+	public Void visitImportStmt(Stmt.Import stmt) {
+		return null;
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		compile(stmt.condition);
+
+		int thenJump = emitJump(OpCode.POP_JUMP_IF_FALSE);
+		compile(stmt.thenBranch);
+
+		if (stmt.elseBranch != null) {
+			int elseJump = emitJump(OpCode.JUMP);
+			patchJump(thenJump);
+			compile(stmt.elseBranch);
+			patchJump(elseJump);
+		} else {
+			patchJump(thenJump);
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Stmt.Print stmt) {
+		compile(stmt.expression);
+		emit(OpCode.PRINT);
+		return null;
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		if (stmt.tailCall) {
+			// the RETURN after it only runs when the callee was a native; a
+			// closure takes over this frame and returns from it itself
+			Expr.Call call = (Expr.Call) stmt.value;
+			compile(call.callee);
+			for (Expr argument : call.arguments) {
+				compile(argument);
+			}
+			at(call.paren);
+			emit(OpCode.TAIL_CALL);
+			emit(call.arguments.size());
+		} else if (stmt.value != null) {
+			compile(stmt.value);
+		} else {
+			emit(OpCode.NIL);
+		}
+
+		at(stmt.keyword);
+		emit(OpCode.RETURN);
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		if (current.scopeDepth > 0) {
+			declareVariable(stmt.name);
+		}
+
+		if (stmt.initializer != null) {
+			compile(stmt.initializer);
+		} else {
+			emit(OpCode.NIL);
+		}
+
+		at(stmt.name);
+		defineVariable(stmt.name);
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		int loopStart = current.chunk().count;
+		compile(stmt.condition);
+
+		int exitJump = emitJump(OpCode.POP_JUMP_IF_FALSE);
+		compile(stmt.body);
+		emitLoop(loopStart);
+
+		patchJump(exitJump);
+		return null;
+	}
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign expr) {
+		compile(expr.value);
+		at(expr.name);
+		if (expr.storage == Resolver.GLOBAL) {
+			emit(OpCode.SET_GLOBAL);
+			emitShort(makeConstant(expr.name));
+			return null;
+		}
+
+		int slot = resolveLocal(current, expr.name);
+		if (slot != -1) {
+			emit(OpCode.SET_LOCAL);
+			emit(slot);
+		} else {
+			emit(OpCode.SET_UPVALUE);
+			emit(resolveUpvalue(current, expr.name));
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary expr) {
+		compile(expr.left);
+		compile(expr.right);
+
+		at(expr.operator);
+		switch (expr.operator.type) {
+			case BANG_EQUAL:
+				emit(OpCode.EQUAL);
+				emit(OpCode.NOT);
+				break;
+			case EQUAL_EQUAL:
+				emit(OpCode.EQUAL);
+				break;
+			case GREATER:
+				emit(OpCode.GREATER);
+				break;
+			case GREATER_EQUAL:
+				emit(OpCode.GREATER_EQUAL);
+				break;
+			case LESS:
+				emit(OpCode.LESS);
+				break;
+			case LESS_EQUAL:
+				emit(OpCode.LESS_EQUAL);
+				break;
+			case PLUS:
+				emit(OpCode.ADD);
+				break;
+			case MINUS:
+				emit(OpCode.SUBTRACT);
+				break;
+			case STAR:
+				emit(OpCode.MULTIPLY);
+				break;
+			case SLASH:
+				emit(OpCode.DIVIDE);
+				break;
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visitCallExpr(Expr.Call expr) {
+		compile(expr.callee);
+		for (Expr argument : expr.arguments) {
+			compile(argument);
+		}
+
+		at(expr.paren);
+		emit(OpCode.CALL);
+		emit(expr.arguments.size());
+		return null;
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping expr) {
+		compile(expr.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitIndexExpr(Expr.Index expr) {
+		compile(expr.object);
+		compile(expr.index);
+
+		at(expr.bracket);
+		emit(OpCode.GET_INDEX);
+		return null;
+	}
+
+	@Override
+	public Void visitListLiteralExpr(Expr.ListLiteral expr) {
+		for (Expr element : expr.elements) {
+			compile(element);
+		}
+
+		emit(OpCode.LIST);
+		emit(expr.elements.size());
+		return null;
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal expr) {
+		if (expr.value == null) {
+			emit(OpCode.NIL);
+		} else if (Boolean.TRUE.equals(expr.value)) {
+			emit(OpCode.TRUE);
+		} else if (Boolean.FALSE.equals(expr.value)) {
+			emit(OpCode.FALSE);
+		} else {
+			emit(OpCode.CONSTANT);
+			emitShort(makeConstant(expr.value));
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visitLogicalExpr(Expr.Logical expr) {
+		compile(expr.left);
+
+		at(expr.operator);
+		if (expr.operator.type == TokenType.OR) {
+			int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+			int endJump = emitJump(OpCode.JUMP);
+			patchJump(elseJump);
+			emit(OpCode.POP);
+			compile(expr.right);
+			patchJump(endJump);
+		} else {
+			int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+			emit(OpCode.POP);
+			compile(expr.right);
+			patchJump(endJump);
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visitSetIndexExpr(Expr.SetIndex expr) {
+		compile(expr.object);
+		compile(expr.index);
+		compile(expr.value);
+
+		at(expr.bracket);
+		emit(OpCode.SET_INDEX);
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary expr) {
+		compile(expr.right);
+
+		at(expr.operator);
+		if (expr.operator.type == TokenType.MINUS) {
+			emit(OpCode.NEGATE);
+		} else {
+			emit(OpCode.NOT);
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visitVariableExpr(Expr.Variable expr) {
+		at(expr.name);
+		if (expr.storage == Resolver.GLOBAL) {
+			emit(OpCode.GET_GLOBAL);
+			emitShort(makeConstant(expr.name));
+			return null;
+		}
+
+		int slot = resolveLocal(current, expr.name);
+		if (slot != -1) {
+			emit(OpCode.GET_LOCAL);
+			emit(slot);
+		} else {
+			emit(OpCode.GET_UPVALUE);
+			emit(resolveUpvalue(current, expr.name));
+		}
+
+		return null;
+	}
+
+	private void declareVariable(Token name) {
+		if (current.scopeDepth == 0) {
+			return; // globals are late bound by name
+		}
+
+		if (current.locals.size() == MAX_LOCALS) {
+			Lox.error(name, "Too many local variables in function.");
+			return;
+		}
+
+		current.locals.add(new Local(name.symbol, current.scopeDepth));
+	}
+
+	private void defineVariable(Token name) {
+		if (current.scopeDepth > 0) {
+			return; // the value already sits in the local's stack slot
+		}
+
+		emit(OpCode.DEFINE_GLOBAL);
+		emitShort(makeConstant(name));
+	}
+
+	private int resolveLocal(FunctionState state, Token name) {
+		for (int i = state.locals.size() - 1; i >= 0; i--) {
+			if (state.locals.get(i).symbol == name.symbol) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private int resolveUpvalue(FunctionState state, Token name) {
+		// the Resolver already proved the name is a local of some enclosing function
+		int local = resolveLocal(state.enclosing, name);
+		if (local != -1) {
+			state.enclosing.locals.get(local).isCaptured = true;
+			return addUpvalue(state, local, true, name);
+		}
+
+		return addUpvalue(state, resolveUpvalue(state.enclosing, name), false, name);
+	}
+
+	private int addUpvalue(FunctionState state, int index, boolean isLocal, Token name) {
+		for (int i = 0; i < state.upvalues.size(); i++) {
+			Upvalue upvalue = state.upvalues.get(i);
+			if (upvalue.index == index && upvalue.isLocal == isLocal) {
+				return i;
+			}
+		}
+
+		if (state.upvalues.size() == MAX_UPVALUES) {
+			Lox.error(name, "Too many closure variables in function.");
+			return 0;
+		}
+
+		state.upvalues.add(new Upvalue(index, isLocal));
+		state.function.upvalueCount = state.upvalues.size();
+		return state.upvalues.size() - 1;
+	}
+
+	private void beginScope() {
+		current.scopeDepth++;
+	}
+
+	private void endScope() {
+		current.scopeDepth--;
+
+		List<Local> locals = current.locals;
+		while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth) {
+			Local local = locals.remove(locals.size() - 1);
+			emit(local.isCaptured ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+		}
+	}
+
+	private VmFunction endFunction() {
+		// implicit `return nil;` at the end of every body
+		emit(OpCode.NIL);
+		emit(OpCode.RETURN);
+
+		VmFunction function = current.function;
+		function.chunk.finish();
+		current = current.enclosing;
+		return function;
+	}
+
+	private int makeConstant(Object value) {
+		int index = current.chunk().addConstant(value);
+		if (index > 0xffff) {
+			Lox.error(line, "Too many constants in one chunk.");
+			return 0;
+		}
+
+		return index;
+	}
+
+	private void at(Token token) {
+		line = token.line;
+		module = token.module;
+	}
+
+	private void emit(int b) {
+		current.chunk().write(b, line, module);
+	}
+
+	private void emitShort(int value) {
+		emit((value >> 8) & 0xff);
+		emit(value & 0xff);
+	}
+
+	private int emitJump(byte instruction) {
+		emit(instruction);
+		emit(0xff);
+		emit(0xff);
+		return current.chunk().count - 2;
+	}
+
+	private void patchJump(int offset) {
+		// -2 to adjust for the bytecode for the jump offset itself
+		int jump = current.chunk().count - offset - 2;
+		if (jump > 0xffff) {
+			Lox.error(line, "Too much code to jump over.");
+		}
+
+		current.chunk().code[offset] = (byte) ((jump >> 8) & 0xff);
+		current.chunk().code[offset + 1] = (byte) (jump & 0xff);
+	}
+
+	private void emitLoop(int loopStart) {
+		emit(OpCode.LOOP);
+
+		int offset = current.chunk().count - loopStart + 2;
+		if (offset > 0xffff) {
+			Lox.error(line, "Loop body too large.");
+		}
+
+		emitShort(offset);
+	}
+
+	private static class FunctionState {
+		final FunctionState enclosing;
+		final VmFunction function;
+		final List<Local> locals = new ArrayList<>();
+		final List<Upvalue> upvalues = new ArrayList<>();
+		int scopeDepth = 0;
+
+		FunctionState(FunctionState enclosing, VmFunction function) {
+			this.enclosing = enclosing;
+			this.function = function;
+			// slot zero holds the function being called
+			locals.add(new Local(Symbols.NONE, 0));
+		}
+
+		Chunk chunk() {
+			return function.chunk;
+		}
+	}
+
+	private static class Local {
+		final int symbol;
+		final int depth;
+		boolean isCaptured = false;
+
+		Local(int symbol, int depth) {
+			this.symbol = symbol;
+			this.depth = depth;
+		}
+	}
+
+	private static class Upvalue {
+		final int index;
+		final boolean isLocal;
+
+		Upvalue(int index, boolean isLocal) {
+			this.index = index;
+			this.isLocal = isLocal;
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package com.ryanpmartz.lox;
+
+// heap storage for a local that closures capture. The declaring frame keeps the
+// Cell in the local's stack slot, and each closure over the variable holds the
+// same Cell in its upvalues
+final class Cell {
+
+	Object value;
+
+	Cell(Object value) {
+		this.value = value;
+	}
+}
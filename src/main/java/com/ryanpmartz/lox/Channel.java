@@ -0,0 +1,33 @@
+package com.ryanpmartz.lox;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// a buffered queue of values between tasks: `send` never blocks, `receive`
+// waits for the oldest value not received yet
+final class Channel {
+
+	// the queue can't hold null, so nil travels as this
+	private static final Object NIL = new Object();
+
+	private final BlockingQueue<Object> values = new LinkedBlockingQueue<>();
+
+	void send(Object value) {
+		values.add(value == null ? NIL : value);
+	}
+
+	Object receive() {
+		try {
+			Object value = values.take();
+			return value == NIL ? null : value;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NativeError("Interrupted while receiving from a channel.");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "<channel>";
+	}
+}
@@ -0,0 +1,47 @@
+package com.ryanpmartz.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// a compiled function body: bytecode, its constant pool and the source line
+// and module (see Token.module) of every byte
+class Chunk {
+
+	byte[] code = new byte[64];
+	int[] lines = new int[64];
+	String[] modules = new String[64];
+	int count = 0;
+
+	private final List<Object> constantPool = new ArrayList<>();
+	Object[] constants = new Object[0];
+	// inline caches for the global instructions, indexed like the name constants
+	Globals.Cell[] globalCells = new Globals.Cell[0];
+
+	void write(int b, int line, String module) {
+		if (count == code.length) {
+			code = Arrays.copyOf(code, count * 2);
+			lines = Arrays.copyOf(lines, count * 2);
+			modules = Arrays.copyOf(modules, count * 2);
+		}
+
+		code[count] = (byte) b;
+		lines[count] = line;
+		modules[count] = module;
+		count++;
+	}
+
+	int addConstant(Object value) {
+		constantPool.add(value);
+		return constantPool.size() - 1;
+	}
+
+	// trims the buffers once the Compiler is done with this chunk
+	void finish() {
+		code = Arrays.copyOf(code, count);
+		lines = Arrays.copyOf(lines, count);
+		modules = Arrays.copyOf(modules, count);
+		constants = constantPool.toArray();
+		globalCells = new Globals.Cell[constants.length];
+	}
+}
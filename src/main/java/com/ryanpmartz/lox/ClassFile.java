@@ -0,0 +1,427 @@
+package com.ryanpmartz.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// minimal writer for the subset of the class-file format JvmCompiler needs: one
+// class with reference fields and methods that only carry a Code attribute.
+// Version 49 lets the verifier infer stack frames itself, so there is no
+// StackMapTable to compute.
+final class ClassFile {
+
+	private static final int MAGIC = 0xCAFEBABE;
+	private static final int MAJOR_VERSION = 49;
+
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_PRIVATE = 0x0002;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_SUPER = 0x0020;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	// opcodes used by the JIT
+	static final int ACONST_NULL = 0x01;
+	static final int ICONST_0 = 0x03;
+	static final int BIPUSH = 0x10;
+	static final int SIPUSH = 0x11;
+	static final int LDC = 0x12;
+	static final int LDC_W = 0x13;
+	static final int ALOAD = 0x19;
+	static final int AALOAD = 0x32;
+	static final int AASTORE = 0x53;
+	static final int ASTORE = 0x3a;
+	static final int POP = 0x57;
+	static final int DUP = 0x59;
+	static final int IFEQ = 0x99;
+	static final int IFNE = 0x9a;
+	static final int GOTO = 0xa7;
+	static final int ARETURN = 0xb0;
+	static final int RETURN = 0xb1;
+	static final int GETSTATIC = 0xb2;
+	static final int GETFIELD = 0xb4;
+	static final int PUTFIELD = 0xb5;
+	static final int INVOKEVIRTUAL = 0xb6;
+	static final int INVOKESPECIAL = 0xb7;
+	static final int INVOKESTATIC = 0xb8;
+	static final int INVOKEINTERFACE = 0xb9;
+	static final int NEW = 0xbb;
+	static final int ANEWARRAY = 0xbd;
+	static final int CHECKCAST = 0xc0;
+	private static final int WIDE = 0xc4;
+
+	private final ByteVector pool = new ByteVector();
+	private final Map<String, Integer> poolIndex = new HashMap<>();
+	private int poolCount = 1;
+
+	private final String name;
+	private final String superName;
+	private final String[] interfaces;
+	private final List<ByteVector> fields = new ArrayList<>();
+	private final List<ByteVector> methods = new ArrayList<>();
+
+	ClassFile(String name, String superName, String... interfaces) {
+		this.name = name;
+		this.superName = superName;
+		this.interfaces = interfaces;
+	}
+
+	String name() {
+		return name;
+	}
+
+	void addField(int access, String fieldName, String descriptor) {
+		ByteVector field = new ByteVector();
+		field.u2(access).u2(utf8(fieldName)).u2(utf8(descriptor)).u2(0);
+		fields.add(field);
+	}
+
+	Code addMethod(int access, String methodName, String descriptor) {
+		Code code = new Code(access, methodName, descriptor);
+		methods.add(code.method);
+		return code;
+	}
+
+	byte[] toByteArray() {
+		int thisClass = classRef(name);
+		int superClass = classRef(superName);
+		int[] interfaceRefs = new int[interfaces.length];
+		for (int i = 0; i < interfaces.length; i++) {
+			interfaceRefs[i] = classRef(interfaces[i]);
+		}
+
+		ByteVector out = new ByteVector();
+		out.u4(MAGIC).u2(0).u2(MAJOR_VERSION);
+		out.u2(poolCount).bytes(pool);
+		out.u2(ACC_PUBLIC | ACC_FINAL | ACC_SUPER).u2(thisClass).u2(superClass);
+		out.u2(interfaceRefs.length);
+		for (int ref : interfaceRefs) {
+			out.u2(ref);
+		}
+		out.u2(fields.size());
+		for (ByteVector field : fields) {
+			out.bytes(field);
+		}
+		out.u2(methods.size());
+		for (ByteVector method : methods) {
+			out.bytes(method);
+		}
+		out.u2(0); // no class attributes
+
+		return out.toByteArray();
+	}
+
+	// constant pool; entries are shared by their textual key
+
+	int utf8(String value) {
+		Integer index = poolIndex.get("U" + value);
+		if (index != null) {
+			return index;
+		}
+
+		pool.u1(CONSTANT_UTF8).utf(value);
+		return addEntry("U" + value);
+	}
+
+	int classRef(String internalName) {
+		return entry("C" + internalName, CONSTANT_CLASS, utf8(internalName), -1);
+	}
+
+	int string(String value) {
+		return entry("S" + value, CONSTANT_STRING, utf8(value), -1);
+	}
+
+	int integer(int value) {
+		String key = "I" + value;
+		Integer index = poolIndex.get(key);
+		if (index != null) {
+			return index;
+		}
+
+		pool.u1(CONSTANT_INTEGER).u4(value);
+		return addEntry(key);
+	}
+
+	int memberRef(int tag, String owner, String memberName, String descriptor) {
+		int nameAndType = entry("N" + memberName + ":" + descriptor, CONSTANT_NAME_AND_TYPE,
+				utf8(memberName), utf8(descriptor));
+		return entry("M" + tag + owner + "." + memberName + ":" + descriptor, tag,
+				classRef(owner), nameAndType);
+	}
+
+	private int entry(String key, int tag, int first, int second) {
+		Integer index = poolIndex.get(key);
+		if (index != null) {
+			return index;
+		}
+
+		pool.u1(tag).u2(first);
+		if (second >= 0) {
+			pool.u2(second);
+		}
+		return addEntry(key);
+	}
+
+	private int addEntry(String key) {
+		if (poolCount > 0xffff) {
+			throw new IllegalStateException("Constant pool overflow.");
+		}
+
+		poolIndex.put(key, poolCount);
+		return poolCount++;
+	}
+
+	// a forward or backward branch target inside one method
+	static final class Label {
+		int position = -1;
+		final List<Integer> branches = new ArrayList<>();
+	}
+
+	// bytecode for one method; tracks the operand stack depth as instructions go in
+	final class Code {
+
+		private final ByteVector method = new ByteVector();
+		private final ByteVector code = new ByteVector();
+		private final List<Label> labels = new ArrayList<>();
+		private int stack = 0;
+		private int maxStack = 0;
+		private int maxLocals;
+
+		private Code(int access, String methodName, String descriptor) {
+			method.u2(access).u2(utf8(methodName)).u2(utf8(descriptor));
+			// `this` plus the parameters, which are all single-slot references here
+			maxLocals = 1 + argumentSlots(descriptor);
+		}
+
+		void insn(int opcode, int stackDelta) {
+			code.u1(opcode);
+			adjust(stackDelta);
+		}
+
+		void intConst(int value) {
+			if (value >= -1 && value <= 5) {
+				code.u1(ICONST_0 + value);
+			} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+				code.u1(BIPUSH).u1(value);
+			} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+				code.u1(SIPUSH).u2(value);
+			} else {
+				ldc(integer(value));
+				return;
+			}
+			adjust(1);
+		}
+
+		void stringConst(String value) {
+			ldc(string(value));
+		}
+
+		private void ldc(int index) {
+			if (index <= 0xff) {
+				code.u1(LDC).u1(index);
+			} else {
+				code.u1(LDC_W).u2(index);
+			}
+			adjust(1);
+		}
+
+		void load(int local) {
+			localInsn(ALOAD, local);
+			adjust(1);
+		}
+
+		void store(int local) {
+			localInsn(ASTORE, local);
+			adjust(-1);
+		}
+
+		private void localInsn(int opcode, int local) {
+			if (local <= 0xff) {
+				code.u1(opcode).u1(local);
+			} else {
+				code.u1(WIDE).u1(opcode).u2(local);
+			}
+			maxLocals = Math.max(maxLocals, local + 1);
+		}
+
+		void typeInsn(int opcode, String type) {
+			code.u1(opcode).u2(classRef(type));
+			if (opcode == NEW) {
+				adjust(1);
+			}
+		}
+
+		void fieldInsn(int opcode, String owner, String fieldName, String descriptor) {
+			code.u1(opcode).u2(memberRef(CONSTANT_FIELDREF, owner, fieldName, descriptor));
+			switch (opcode) {
+				case GETSTATIC:
+					adjust(1);
+					break;
+				case PUTFIELD:
+					adjust(-2);
+					break;
+				default: // GETFIELD replaces the receiver
+					break;
+			}
+		}
+
+		void methodInsn(int opcode, String owner, String methodName, String descriptor) {
+			int args = argumentSlots(descriptor);
+			if (opcode == INVOKEINTERFACE) {
+				code.u1(opcode).u2(memberRef(CONSTANT_INTERFACE_METHODREF, owner, methodName, descriptor));
+				code.u1(args + 1).u1(0);
+			} else {
+				code.u1(opcode).u2(memberRef(CONSTANT_METHODREF, owner, methodName, descriptor));
+			}
+
+			int receiver = opcode == INVOKESTATIC ? 0 : 1;
+			adjust(returnSlots(descriptor) - args - receiver);
+		}
+
+		void jump(int opcode, Label target) {
+			target.branches.add(code.size());
+			code.u1(opcode).u2(0);
+			adjust(opcode == GOTO ? 0 : -1);
+			if (!labels.contains(target)) {
+				labels.add(target);
+			}
+		}
+
+		void mark(Label label) {
+			label.position = code.size();
+			if (!labels.contains(label)) {
+				labels.add(label);
+			}
+		}
+
+		void end() {
+			for (Label label : labels) {
+				for (int branch : label.branches) {
+					int offset = label.position - branch;
+					if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+						throw new IllegalStateException("Branch offset out of range.");
+					}
+					code.patchU2(branch + 1, offset);
+				}
+			}
+			if (code.size() > 0xffff) {
+				throw new IllegalStateException("Method too large.");
+			}
+
+			method.u2(1); // one attribute: Code
+			method.u2(utf8("Code")).u4(12 + code.size());
+			method.u2(maxStack).u2(maxLocals).u4(code.size()).bytes(code);
+			method.u2(0).u2(0); // no exception table, no attributes
+		}
+
+		private void adjust(int delta) {
+			stack += delta;
+			maxStack = Math.max(maxStack, stack);
+		}
+	}
+
+	private static int argumentSlots(String descriptor) {
+		int slots = 0;
+		int i = 1;
+		while (descriptor.charAt(i) != ')') {
+			char c = descriptor.charAt(i);
+			if (c == 'J' || c == 'D') {
+				slots += 2;
+			} else {
+				slots++;
+			}
+
+			while (descriptor.charAt(i) == '[') {
+				i++;
+			}
+			if (descriptor.charAt(i) == 'L') {
+				i = descriptor.indexOf(';', i);
+			}
+			i++;
+		}
+		return slots;
+	}
+
+	private static int returnSlots(String descriptor) {
+		char c = descriptor.charAt(descriptor.indexOf(')') + 1);
+		if (c == 'V') {
+			return 0;
+		}
+		return c == 'J' || c == 'D' ? 2 : 1;
+	}
+
+	// growable big-endian byte buffer
+	private static final class ByteVector {
+
+		private byte[] data = new byte[64];
+		private int size = 0;
+
+		ByteVector u1(int b) {
+			ensure(1);
+			data[size++] = (byte) b;
+			return this;
+		}
+
+		ByteVector u2(int s) {
+			return u1(s >>> 8).u1(s);
+		}
+
+		ByteVector u4(int i) {
+			return u2(i >>> 16).u2(i);
+		}
+
+		ByteVector utf(String s) {
+			// modified UTF-8, as the class-file format wants it
+			ByteVector bytes = new ByteVector();
+			for (int i = 0; i < s.length(); i++) {
+				char c = s.charAt(i);
+				if (c >= 0x0001 && c <= 0x007f) {
+					bytes.u1(c);
+				} else if (c <= 0x07ff) {
+					bytes.u1(0xc0 | (c >> 6)).u1(0x80 | (c & 0x3f));
+				} else {
+					bytes.u1(0xe0 | (c >> 12)).u1(0x80 | ((c >> 6) & 0x3f)).u1(0x80 | (c & 0x3f));
+				}
+			}
+			if (bytes.size > 0xffff) {
+				throw new IllegalStateException("String constant too long.");
+			}
+			return u2(bytes.size).bytes(bytes);
+		}
+
+		ByteVector bytes(ByteVector other) {
+			ensure(other.size);
+			System.arraycopy(other.data, 0, data, size, other.size);
+			size += other.size;
+			return this;
+		}
+
+		void patchU2(int at, int s) {
+			data[at] = (byte) (s >>> 8);
+			data[at + 1] = (byte) s;
+		}
+
+		int size() {
+			return size;
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(data, size);
+		}
+
+		private void ensure(int extra) {
+			if (size + extra > data.length) {
+				data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+			}
+		}
+	}
+}
@@ -0,0 +1,9 @@
+package com.ryanpmartz.lox;
+
+// body of a Lox function that JvmCompiler translated into a JVM class
+interface CompiledFunction {
+
+	// runs with the function's frame entered, so the arguments are
+	// interpreter.local(0) and up
+	Object call(Interpreter interpreter, Cell[] upvalues);
+}
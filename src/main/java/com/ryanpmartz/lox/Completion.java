@@ -0,0 +1,11 @@
+package com.ryanpmartz.lox;
+
+// how a statement finished executing. Anything other than NORMAL makes the
+// enclosing blocks stop and pass it outwards until a statement that handles it:
+// RETURN is consumed by LoxFunction.call, and loops are where break/continue
+// would be. The value of a `return` travels separately in the Interpreter, so
+// completing a statement never allocates.
+enum Completion {
+	NORMAL,
+	RETURN
+}
@@ -0,0 +1,66 @@
+package com.ryanpmartz.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// one execution of an Engine's program, with its own globals, output and
+// runtime errors. A Context is used by one thread at a time; any number of them
+// can run the same Engine concurrently.
+public final class Context {
+
+	private final Engine engine;
+	private final Interpreter interpreter;
+	private final List<String> errors = new ArrayList<>();
+
+	Context(Engine engine, PrintStream out) {
+		this.engine = engine;
+		this.interpreter = new Interpreter(true, true, out);
+	}
+
+	// defines a global for the program to read, usually before run(); values are
+	// null for nil, Booleans, Numbers and Strings
+	public void define(String name, Object value) {
+		interpreter.globals.define(name, toLox(value));
+	}
+
+	// runs the program; false when it stopped with a runtime error, see errors()
+	public boolean run() {
+		try {
+			interpreter.run(engine.program());
+			return true;
+		} catch (LoxRuntimeError error) {
+			errors.add(Lox.describe(error));
+			return false;
+		}
+	}
+
+	// a global's value, null when it is nil or not defined; strings come back as Strings
+	public Object get(String name) {
+		// one the program declared, else one it only assigned or define() made
+		Globals.Cell cell = interpreter.globals.cell(Modules.main(name));
+		if (!cell.defined) {
+			cell = interpreter.globals.cell(name);
+		}
+		if (!cell.defined) {
+			return null;
+		}
+		return cell.value instanceof Rope ? cell.value.toString() : cell.value;
+	}
+
+	// runtime errors of every run() so far, formatted like the command line prints them
+	public List<String> errors() {
+		return Collections.unmodifiableList(errors);
+	}
+
+	private static Object toLox(Object value) {
+		if (value == null || value instanceof Boolean || value instanceof Double || value instanceof String) {
+			return value;
+		}
+		if (value instanceof Number) {
+			return ((Number) value).doubleValue();
+		}
+		throw new IllegalArgumentException("Not a Lox value: " + value.getClass().getName());
+	}
+}
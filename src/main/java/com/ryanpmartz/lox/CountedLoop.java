@@ -0,0 +1,116 @@
+package com.ryanpmartz.lox;
+
+import java.util.List;
+
+// the shape `for (var i = a; i < b; i = i + c) body` desugars to: a While whose
+// condition compares a stack local against a bound, and whose body ends with
+// stepping that local by a constant. The interpreter runs such a loop with the
+// counter as a primitive double instead of dispatching the condition and the
+// increment each iteration; see Interpreter.executeCounted
+final class CountedLoop {
+
+	final int slot; // of the counter
+	final BinaryNode.Comparison comparison;
+	// a literal or a never-reassigned local is read once before the loop;
+	// any other local bound is read from its slot each iteration
+	final Expr bound;
+	final boolean invariantBound;
+	final double step;
+	final List<Stmt> body; // without the increment
+	final Stmt increment;
+
+	private CountedLoop(int slot, BinaryNode.Comparison comparison, Expr bound, boolean invariantBound,
+			double step, List<Stmt> body, Stmt increment) {
+		this.slot = slot;
+		this.comparison = comparison;
+		this.bound = bound;
+		this.invariantBound = invariantBound;
+		this.step = step;
+		this.body = body;
+		this.increment = increment;
+	}
+
+	// null when the loop doesn't have the counted shape
+	static CountedLoop recognize(Stmt.While loop) {
+		if (!(loop.condition instanceof Expr.Binary) || !(loop.body instanceof Stmt.Block)) {
+			return null;
+		}
+
+		Expr.Binary condition = (Expr.Binary) loop.condition;
+		BinaryNode.Comparison comparison = comparison(condition.operator.type);
+		if (comparison == null || !isStackLocal(condition.left)) {
+			return null;
+		}
+		int slot = ((Expr.Variable) condition.left).slot;
+
+		Expr bound = condition.right;
+		boolean invariant;
+		if (bound instanceof Expr.Literal) {
+			invariant = true;
+		} else if (isStackLocal(bound) && ((Expr.Variable) bound).slot != slot) {
+			Stmt.Var declaration = ((Expr.Variable) bound).declaration;
+			invariant = declaration != null && !declaration.reassigned;
+		} else {
+			return null;
+		}
+
+		List<Stmt> statements = ((Stmt.Block) loop.body).statements;
+		if (statements.isEmpty()) {
+			return null;
+		}
+		Stmt increment = statements.get(statements.size() - 1);
+		Double step = step(increment, slot);
+		if (step == null) {
+			return null;
+		}
+
+		return new CountedLoop(slot, comparison, bound, invariant, step,
+				statements.subList(0, statements.size() - 1), increment);
+	}
+
+	private static BinaryNode.Comparison comparison(TokenType operator) {
+		switch (operator) {
+			case LESS:
+				return new BinaryNode.LessDoubles();
+			case LESS_EQUAL:
+				return new BinaryNode.LessEqualDoubles();
+			case GREATER:
+				return new BinaryNode.GreaterDoubles();
+			case GREATER_EQUAL:
+				return new BinaryNode.GreaterEqualDoubles();
+			default:
+				return null;
+		}
+	}
+
+	private static boolean isStackLocal(Expr expr) {
+		return expr instanceof Expr.Variable && ((Expr.Variable) expr).storage == Resolver.STACK;
+	}
+
+	// c for `i = i + c;` and -c for `i = i - c;` with a literal number c, otherwise null
+	private static Double step(Stmt stmt, int slot) {
+		if (!(stmt instanceof Stmt.Expression) || !(((Stmt.Expression) stmt).expression instanceof Expr.Assign)) {
+			return null;
+		}
+		Expr.Assign assign = (Expr.Assign) ((Stmt.Expression) stmt).expression;
+		if (assign.storage != Resolver.STACK || assign.slot != slot || !(assign.value instanceof Expr.Binary)) {
+			return null;
+		}
+
+		Expr.Binary sum = (Expr.Binary) assign.value;
+		if (!isStackLocal(sum.left) || ((Expr.Variable) sum.left).slot != slot
+				|| !(sum.right instanceof Expr.Literal) || !(((Expr.Literal) sum.right).value instanceof Double)) {
+			return null;
+		}
+
+		double amount = (double) ((Expr.Literal) sum.right).value;
+		switch (sum.operator.type) {
+			case PLUS:
+				return amount;
+			case MINUS:
+				return -amount;
+			default:
+				return null;
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package com.ryanpmartz.lox;
+
+// a fixed-size array of numbers, made by `doubles(length)` or `doubles(list)`,
+// for bulk math: the natives in Natives run a whole loop in Java instead of one
+// Lox operation per element. The loops are plain counted loops over double[],
+// which C2 compiles to SIMD instructions for the elementwise operations; the
+// reductions keep four running results so consecutive adds don't wait on each
+// other, which means their rounding can differ slightly from a loop in Lox.
+// Indexed like a list, but only ever holds numbers.
+final class DoubleArray {
+
+	final double[] values;
+
+	DoubleArray(double[] values) {
+		this.values = values;
+	}
+
+	int length() {
+		return values.length;
+	}
+
+	int index(double index) {
+		return LoxList.position(index, values.length);
+	}
+
+	void set(int index, Object value) {
+		if (!(value instanceof Double)) {
+			throw new NativeError("Can only store numbers in a double array.");
+		}
+		values[index] = (double) value;
+	}
+
+	static DoubleArray add(DoubleArray a, DoubleArray b) {
+		checkLengths(a, b);
+		double[] result = new double[a.values.length];
+		double[] x = a.values;
+		double[] y = b.values;
+		for (int i = 0; i < result.length; i++) {
+			result[i] = x[i] + y[i];
+		}
+		return new DoubleArray(result);
+	}
+
+	static DoubleArray multiply(DoubleArray a, DoubleArray b) {
+		checkLengths(a, b);
+		double[] result = new double[a.values.length];
+		double[] x = a.values;
+		double[] y = b.values;
+		for (int i = 0; i < result.length; i++) {
+			result[i] = x[i] * y[i];
+		}
+		return new DoubleArray(result);
+	}
+
+	static DoubleArray scale(DoubleArray a, double factor) {
+		double[] result = new double[a.values.length];
+		double[] x = a.values;
+		for (int i = 0; i < result.length; i++) {
+			result[i] = x[i] * factor;
+		}
+		return new DoubleArray(result);
+	}
+
+	static double dot(DoubleArray a, DoubleArray b) {
+		checkLengths(a, b);
+		double[] x = a.values;
+		double[] y = b.values;
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int i = 0;
+		for (; i + 3 < x.length; i += 4) {
+			s0 += x[i] * y[i];
+			s1 += x[i + 1] * y[i + 1];
+			s2 += x[i + 2] * y[i + 2];
+			s3 += x[i + 3] * y[i + 3];
+		}
+		for (; i < x.length; i++) {
+			s0 += x[i] * y[i];
+		}
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	static double sum(DoubleArray a) {
+		double[] x = a.values;
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int i = 0;
+		for (; i + 3 < x.length; i += 4) {
+			s0 += x[i];
+			s1 += x[i + 1];
+			s2 += x[i + 2];
+			s3 += x[i + 3];
+		}
+		for (; i < x.length; i++) {
+			s0 += x[i];
+		}
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	// Math.min and max, so a NaN anywhere makes the result NaN
+	static double min(DoubleArray a) {
+		double[] x = checkNotEmpty(a);
+		double result = x[0];
+		for (int i = 1; i < x.length; i++) {
+			result = Math.min(result, x[i]);
+		}
+		return result;
+	}
+
+	static double max(DoubleArray a) {
+		double[] x = checkNotEmpty(a);
+		double result = x[0];
+		for (int i = 1; i < x.length; i++) {
+			result = Math.max(result, x[i]);
+		}
+		return result;
+	}
+
+	private static void checkLengths(DoubleArray a, DoubleArray b) {
+		if (a.values.length != b.values.length) {
+			throw new NativeError("Double arrays must have the same length.");
+		}
+	}
+
+	private static double[] checkNotEmpty(DoubleArray a) {
+		if (a.values.length == 0) {
+			throw new NativeError("Double array is empty.");
+		}
+		return a.values;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder("doubles[");
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				text.append(", ");
+			}
+			text.append(Interpreter.stringify(values[i]));
+		}
+		return text.append(']').toString();
+	}
+}
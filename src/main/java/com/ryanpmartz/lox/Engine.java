@@ -0,0 +1,64 @@
+package com.ryanpmartz.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// a Lox program compiled for embedding. Scanning, parsing, resolving and
+// optimizing happen once, in compile(); the Engine never changes after that, so
+// it can be shared by any number of threads, each running the program in its
+// own Context:
+//
+//     Engine engine = Engine.compile(source);
+//     Context context = engine.newContext(out);
+//     context.define("input", 42.0);
+//     if (!context.run()) {
+//         ... context.errors() ...
+//     }
+//     Object result = context.get("result");
+//
+// Contexts share the tree, so what it learns while running (specialized
+// operators, compiled hot functions) benefits all of them.
+public final class Engine {
+
+	private final List<Stmt> program;
+
+	private Engine(List<Stmt> program) {
+		this.program = program;
+	}
+
+	// throws LoxCompileError with every error reported when the source doesn't
+	// compile; imports are relative to the working directory
+	public static Engine compile(String source) {
+		List<String> errors = new ArrayList<>();
+		List<Stmt> program = Lox.collectErrors(errors, () -> {
+			List<Stmt> statements = Modules.load(source, Paths.get(""), new Modules.Session());
+			if (statements == null) {
+				return null;
+			}
+			return new Optimizer().optimize(statements);
+		});
+
+		if (!errors.isEmpty()) {
+			throw new LoxCompileError(errors);
+		}
+		return new Engine(Collections.unmodifiableList(program));
+	}
+
+	// a fresh set of globals that prints to `out`
+	public Context newContext(PrintStream out) {
+		return new Context(this, out);
+	}
+
+	// a context whose output is discarded
+	public Context newContext() {
+		return newContext(new PrintStream(OutputStream.nullOutputStream()));
+	}
+
+	List<Stmt> program() {
+		return program;
+	}
+}
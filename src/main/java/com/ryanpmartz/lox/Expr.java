@@ -12,10 +12,16 @@ public abstract class Expr {
 
         R visitGroupingExpr(Grouping expr);
 
+        R visitIndexExpr(Index expr);
+
+        R visitListLiteralExpr(ListLiteral expr);
+
         R visitLiteralExpr(Literal expr);
 
         R visitLogicalExpr(Logical expr);
 
+        R visitSetIndexExpr(SetIndex expr);
+
         R visitUnaryExpr(Unary expr);
 
         R visitVariableExpr(Variable expr);
@@ -33,6 +39,9 @@ public abstract class Expr {
 
         public final Token name;
         public final Expr value;
+        int storage = Resolver.GLOBAL;
+        int slot;
+        Globals.Cell cell;
     }
 
     public static class Binary extends Expr {
@@ -49,6 +58,7 @@ public abstract class Expr {
         public final Expr left;
         public final Token operator;
         public final Expr right;
+        BinaryNode node = new BinaryNode.Uninitialized();
     }
 
     public static class Call extends Expr {
@@ -79,6 +89,34 @@ public abstract class Expr {
         public final Expr expression;
     }
 
+    public static class Index extends Expr {
+        Index(Expr object, Token bracket, Expr index) {
+            this.object = object;
+            this.bracket = bracket;
+            this.index = index;
+        }
+
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitIndexExpr(this);
+        }
+
+        public final Expr object;
+        public final Token bracket;
+        public final Expr index;
+    }
+
+    public static class ListLiteral extends Expr {
+        ListLiteral(List<Expr> elements) {
+            this.elements = elements;
+        }
+
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitListLiteralExpr(this);
+        }
+
+        public final List<Expr> elements;
+    }
+
     public static class Literal extends Expr {
         Literal(Object value) {
             this.value = value;
@@ -107,6 +145,24 @@ public abstract class Expr {
         public final Expr right;
     }
 
+    public static class SetIndex extends Expr {
+        SetIndex(Expr object, Token bracket, Expr index, Expr value) {
+            this.object = object;
+            this.bracket = bracket;
+            this.index = index;
+            this.value = value;
+        }
+
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitSetIndexExpr(this);
+        }
+
+        public final Expr object;
+        public final Token bracket;
+        public final Expr index;
+        public final Expr value;
+    }
+
     public static class Unary extends Expr {
         Unary(Token operator, Expr right) {
             this.operator = operator;
@@ -119,6 +175,7 @@ public abstract class Expr {
 
         public final Token operator;
         public final Expr right;
+        UnaryNode node = new UnaryNode.Uninitialized();
     }
 
     public static class Variable extends Expr {
@@ -131,6 +188,10 @@ public abstract class Expr {
         }
 
         public final Token name;
+        int storage = Resolver.GLOBAL;
+        int slot;
+        Stmt.Var declaration;
+        Globals.Cell cell;
     }
 
     abstract <R> R accept(Visitor<R> visitor);
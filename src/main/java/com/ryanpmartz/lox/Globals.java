@@ -0,0 +1,102 @@
+package com.ryanpmartz.lox;
+
+import java.util.Arrays;
+
+// global variables. Globals are late bound, so a name may be used before it is
+// defined; every name gets a Cell the first time it is looked up or defined, and
+// the cell stays put from then on. Cells are indexed by the name's symbol.
+// Variable and assignment sites cache the cell they resolved to, so after the
+// first execution an access is a field load instead of hash lookups.
+//
+// Spawned tasks share their Interpreter's Globals. A cell's value is volatile,
+// so a task sees every global as last written by any task, in order; that
+// doesn't make `x = x + 1` atomic, for which tasks use channels.
+class Globals {
+
+	// a global's storage; `defined` stays false until a `var` or `fun` runs for it
+	static final class Cell {
+		final Globals owner;
+		final String name;
+		final int symbol;
+		volatile Object value;
+		volatile boolean defined = false;
+
+		private Cell(Globals owner, String name, int symbol) {
+			this.owner = owner;
+			this.name = name;
+			this.symbol = symbol;
+		}
+	}
+
+	private Cell[] table = new Cell[Math.max(64, Symbols.count())];
+
+	Cell cell(String name) {
+		return cell(Symbols.intern(name));
+	}
+
+	Cell cell(Token name) {
+		return cell(name.symbol);
+	}
+
+	private synchronized Cell cell(int symbol) {
+		if (symbol >= table.length) {
+			table = Arrays.copyOf(table, Math.max(table.length * 2, symbol + 1));
+		}
+
+		Cell cell = table[symbol];
+		if (cell == null) {
+			cell = new Cell(this, Symbols.name(symbol), symbol);
+			table[symbol] = cell;
+		}
+		return cell;
+	}
+
+	void define(String name, Object value) {
+		define(cell(name), value);
+	}
+
+	void define(Token name, Object value) {
+		define(cell(name), value);
+	}
+
+	// defines every global `other` has defined, to the same value
+	void defineAll(Globals other) {
+		for (Cell cell : other.table) {
+			if (cell != null && cell.defined) {
+				define(cell(cell.symbol), cell.value);
+			}
+		}
+	}
+
+	// redefining a global is allowed and just replaces its value
+	private static void define(Cell cell, Object value) {
+		cell.value = value;
+		cell.defined = true;
+	}
+
+	Object get(Token name) {
+		return get(cell(name), name);
+	}
+
+	void assign(Token name, Object value) {
+		assign(cell(name), name, value);
+	}
+
+	static Object get(Cell cell, Token name) {
+		if (!cell.defined) {
+			throw undefined(name);
+		}
+		return cell.value;
+	}
+
+	static void assign(Cell cell, Token name, Object value) {
+		if (!cell.defined) {
+			throw undefined(name);
+		}
+		cell.value = value;
+	}
+
+	private static LoxRuntimeError undefined(Token name) {
+		return new LoxRuntimeError(name, "Undefined variable '" + name.lexeme + "'. ");
+	}
+}
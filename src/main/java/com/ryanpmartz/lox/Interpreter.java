@@ -1,56 +1,88 @@
 package com.ryanpmartz.lox;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Completion> {
 
-	final Environment globals = new Environment();
-	private final Map<Expr, Integer> locals = new HashMap<>();
-	private Environment environment = globals;
+	final Globals globals;
+	// where `print` writes; null for whatever System.out is at the time
+	private final PrintStream out;
+	// locals live on this stack, a frame per running function; captured ones
+	// through a Cell in their slot. The running function's frame starts at
+	// `frame`; slots from `top` on are free, and calls push their arguments
+	// there. `numbers` holds the values of slots marked UNBOXED
+	private static final Object UNBOXED = new Object();
+	private Object[] stack = new Object[256];
+	private double[] numbers = new double[256];
+	private int frame = 0;
+	private int top = 0;
+	// cells of the running function's free variables
+	private Cell[] upvalues = null;
+
+	// value of the `return` currently unwinding with Completion.RETURN
+	private Object returnValue;
+
+	// when set, Binary and Unary sites rewrite themselves into type-specialized nodes
+	private final boolean specializing;
+
+	// when set, functions that get hot are translated to JVM bytecode by JvmCompiler
+	final boolean compiling;
 
 	public Interpreter() {
-		globals.define("clock", new LoxCallable() {
-			@Override
-			public int arity() {
-				return 0;
-			}
+		this(true, true);
+	}
 
-			@Override
-			public Object call(Interpreter interpreter, List<Object> arguments) {
-				return (double) System.currentTimeMillis() / 1000.0;
-			}
+	public Interpreter(boolean specializing, boolean compiling) {
+		this(specializing, compiling, null);
+	}
 
-			@Override
-			public String toString() {
-				return "<native fn>";
-			}
-		});
+	Interpreter(boolean specializing, boolean compiling, PrintStream out) {
+		this(specializing, compiling, out, new Globals());
+		Natives.define(globals);
+	}
+
+	private Interpreter(boolean specializing, boolean compiling, PrintStream out, Globals globals) {
+		this.specializing = specializing;
+		this.compiling = compiling;
+		this.out = out;
+		this.globals = globals;
+	}
 
+	// another execution state over the same globals, for a spawned Task
+	Interpreter fork() {
+		return new Interpreter(specializing, compiling, out, globals);
 	}
 
 	// a List<Stmt> is AKA a program
 	public void interpret(List<Stmt> statements) {
 		try {
-			for (Stmt statement : statements) {
-				execute(statement);
-			}
+			run(statements);
 		} catch (LoxRuntimeError err) {
 			Lox.runtimeError(err);
 		}
 	}
 
-	private void execute(Stmt stmt) {
-		stmt.accept(this);
+	// like interpret(), but a runtime error is left to the caller
+	void run(List<Stmt> statements) {
+		try {
+			for (Stmt statement : statements) {
+				execute(statement);
+			}
+		} catch (LoxRuntimeError err) {
+			frame = 0;
+			top = 0;
+			upvalues = null;
+			throw err;
+		}
 	}
 
-	public void resolve(Expr expr, int depth) {
-		locals.put(expr, depth);
+	private Completion execute(Stmt stmt) {
+		return stmt.accept(this);
 	}
 
-	private String stringify(Object object) {
+	static String stringify(Object object) {
 		if (object == null) {
 			return "nil";
 		}
@@ -79,17 +111,184 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		return evaluate(expr.expression);
 	}
 
+	@Override
+	public Object visitListLiteralExpr(Expr.ListLiteral expr) {
+		LoxList list = new LoxList(expr.elements.size());
+		for (Expr element : expr.elements) {
+			list.add(evaluate(element));
+		}
+		return list;
+	}
+
+	@Override
+	public Object visitIndexExpr(Expr.Index expr) {
+		return index(expr, evaluate(expr.object));
+	}
+
+	private Object index(Expr.Index expr, Object object) {
+		try {
+			if (object instanceof LoxList) {
+				// a number index, like a counter, is read without boxing it
+				LoxList list = (LoxList) object;
+				return list.get(list.index(evaluateIndex(expr.index)));
+			}
+			return LoxList.get(object, evaluate(expr.index));
+		} catch (NativeError error) {
+			throw new LoxRuntimeError(expr.bracket, error.getMessage());
+		}
+	}
+
+	@Override
+	public Object visitSetIndexExpr(Expr.SetIndex expr) {
+		return setIndex(expr, false);
+	}
+
+	// `discard` when the assigned value isn't needed, so a number can stay unboxed
+	private Object setIndex(Expr.SetIndex expr, boolean discard) {
+		Object object = evaluate(expr.object);
+		try {
+			if (discard && object instanceof DoubleArray && producesDouble(expr.value)) {
+				DoubleArray array = (DoubleArray) object;
+				double index = evaluateIndex(expr.index);
+				try {
+					double value = evaluateDouble(expr.value);
+					array.values[array.index(index)] = value;
+				} catch (NotANumber e) {
+					array.set(array.index(index), e.value);
+				}
+				return null;
+			}
+
+			if (!(object instanceof LoxList)) {
+				Object index = evaluate(expr.index);
+				Object value = evaluate(expr.value);
+				LoxList.set(object, index, value);
+				return value;
+			}
+
+			LoxList list = (LoxList) object;
+			double index = evaluateIndex(expr.index);
+			if (discard && list.holdsNumbers() && producesDouble(expr.value)) {
+				try {
+					double value = evaluateDouble(expr.value);
+					list.setNumber(list.index(index), value);
+				} catch (NotANumber e) {
+					list.set(list.index(index), e.value);
+				}
+				return null;
+			}
+
+			Object value = evaluate(expr.value);
+			list.set(list.index(index), value);
+			return value;
+		} catch (NativeError error) {
+			throw new LoxRuntimeError(expr.bracket, error.getMessage());
+		}
+	}
+
+	private double evaluateIndex(Expr index) {
+		try {
+			return evaluateDouble(index);
+		} catch (NotANumber e) {
+			return LoxList.checkIndex(e.value);
+		}
+	}
+
 	private Object evaluate(Expr expr) {
 		return expr.accept(this);
 	}
 
+	// evaluates an expression expected to produce a number. Arithmetic on sites
+	// specialized for numbers stays in primitive doubles all the way down, so only
+	// the final result gets boxed. Throws NotANumber if the value isn't a number
+	// after all, after deoptimizing whichever site found out.
+	private double evaluateDouble(Expr expr) {
+		if (expr instanceof Expr.Binary) {
+			Expr.Binary binary = (Expr.Binary) expr;
+			BinaryNode node = binary.node;
+			if (node instanceof BinaryNode.Arithmetic) {
+				double left;
+				try {
+					left = evaluateDouble(binary.left);
+				} catch (NotANumber e) {
+					return unboxed(BinaryNode.deoptimize(binary, e.value, evaluate(binary.right)));
+				}
+				double right;
+				try {
+					right = evaluateDouble(binary.right);
+				} catch (NotANumber e) {
+					return unboxed(BinaryNode.deoptimize(binary, left, e.value));
+				}
+				return ((BinaryNode.Arithmetic) node).apply(left, right);
+			}
+		} else if (expr instanceof Expr.Unary) {
+			Expr.Unary unary = (Expr.Unary) expr;
+			if (unary.node instanceof UnaryNode.NegateDouble) {
+				try {
+					return -evaluateDouble(unary.right);
+				} catch (NotANumber e) {
+					return unboxed(UnaryNode.deoptimize(unary, e.value));
+				}
+			}
+		} else if (expr instanceof Expr.Grouping) {
+			return evaluateDouble(((Expr.Grouping) expr).expression);
+		} else if (expr instanceof Expr.Index) {
+			Expr.Index index = (Expr.Index) expr;
+			Object object = evaluate(index.object);
+			try {
+				if (object instanceof LoxList && ((LoxList) object).holdsNumbers()) {
+					LoxList list = (LoxList) object;
+					return list.number(list.index(evaluateIndex(index.index)));
+				}
+				if (object instanceof DoubleArray) {
+					DoubleArray array = (DoubleArray) object;
+					return array.values[array.index(evaluateIndex(index.index))];
+				}
+			} catch (NativeError error) {
+				throw new LoxRuntimeError(index.bracket, error.getMessage());
+			}
+			return unboxed(index(index, object));
+		} else if (expr instanceof Expr.Variable) {
+			Expr.Variable variable = (Expr.Variable) expr;
+			if (variable.storage == Resolver.STACK) {
+				int index = frame + variable.slot;
+				Object value = stack[index];
+				if (value == UNBOXED) {
+					return numbers[index];
+				}
+				return unboxed(value);
+			}
+		}
+
+		return unboxed(evaluate(expr));
+	}
+
+	private static double unboxed(Object value) {
+		if (value instanceof Double) {
+			return (double) value;
+		}
+		throw new NotANumber(value);
+	}
+
 	@Override
 	public Object visitUnaryExpr(Expr.Unary expr) {
+		if (specializing && expr.node instanceof UnaryNode.NegateDouble) {
+			return evaluateDouble(expr);
+		}
+
 		Object right = evaluate(expr.right);
 
-		switch (expr.operator.type) {
+		if (specializing) {
+			return expr.node.execute(expr, right);
+		}
+
+		return unary(expr.operator, right);
+	}
+
+	static Object unary(Token operator, Object right) {
+		switch (operator.type) {
 			case MINUS:
-				checkNumberOperand(expr.operator, right);
+				checkNumberOperand(operator, right);
 				return -(double) right;
 			case BANG:
 				return !isTruthy(right);
@@ -101,24 +300,63 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 	@Override
 	public Object visitBinaryExpr(Expr.Binary expr) {
+		if (specializing) {
+			BinaryNode node = expr.node;
+			if (node instanceof BinaryNode.Arithmetic) {
+				try {
+					return evaluateDouble(expr);
+				} catch (NotANumber e) {
+					return e.value; // the site deoptimized and produced something else, e.g. a string
+				}
+			}
+			if (node instanceof BinaryNode.Comparison) {
+				return compareDoubles(expr, (BinaryNode.Comparison) node);
+			}
+		}
+
 		Object left = evaluate(expr.left);
 		Object right = evaluate(expr.right);
 
-		switch (expr.operator.type) {
+		if (specializing) {
+			// each site has rewritten itself for the operand types it has seen
+			return expr.node.execute(expr, left, right);
+		}
+
+		return binary(expr.operator, left, right);
+	}
+
+	private Object compareDoubles(Expr.Binary expr, BinaryNode.Comparison node) {
+		double left;
+		try {
+			left = evaluateDouble(expr.left);
+		} catch (NotANumber e) {
+			return BinaryNode.deoptimize(expr, e.value, evaluate(expr.right));
+		}
+		double right;
+		try {
+			right = evaluateDouble(expr.right);
+		} catch (NotANumber e) {
+			return BinaryNode.deoptimize(expr, left, e.value);
+		}
+		return node.test(left, right);
+	}
+
+	static Object binary(Token operator, Object left, Object right) {
+		switch (operator.type) {
 			case GREATER:
-				checkNumberOperands(expr.operator, left, right);
+				checkNumberOperands(operator, left, right);
 				return (double) left > (double) right;
 			case GREATER_EQUAL:
-				checkNumberOperands(expr.operator, left, right);
+				checkNumberOperands(operator, left, right);
 				return (double) left >= (double) right;
 			case LESS:
-				checkNumberOperands(expr.operator, left, right);
+				checkNumberOperands(operator, left, right);
 				return (double) left < (double) right;
 			case LESS_EQUAL:
-				checkNumberOperands(expr.operator, left, right);
+				checkNumberOperands(operator, left, right);
 				return (double) left <= (double) right;
 			case MINUS:
-				checkNumberOperands(expr.operator, left, right);
+				checkNumberOperands(operator, left, right);
 				return (double) left - (double) right;
 			case BANG_EQUAL:
 				return !isEqual(left, right);
@@ -129,17 +367,17 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 					return (double) left + (double) right;
 				}
 
-				if (left instanceof String && right instanceof String) {
-					return (String) left + (String) right;
+				if (isString(left) && isString(right)) {
+					return Rope.concat((CharSequence) left, (CharSequence) right);
 				}
 
-				throw new LoxRuntimeError(expr.operator,
+				throw new LoxRuntimeError(operator,
 						"Operands must be two numbers or two strings.");
 			case SLASH:
-				checkNumberOperands(expr.operator, left, right);
+				checkNumberOperands(operator, left, right);
 				return (double) left / (double) right;
 			case STAR:
-				checkNumberOperands(expr.operator, left, right);
+				checkNumberOperands(operator, left, right);
 				return (double) left * (double) right;
 
 		}
@@ -149,74 +387,241 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	}
 
 	@Override
-	public Void visitExpressionStmt(Stmt.Expression stmt) {
-		evaluate(stmt.expression);
-		return null;
+	public Completion visitExpressionStmt(Stmt.Expression stmt) {
+		if (stmt.expression instanceof Expr.Assign) {
+			// the value of the assignment is discarded, so it never needs boxing
+			assign((Expr.Assign) stmt.expression);
+		} else if (stmt.expression instanceof Expr.SetIndex) {
+			setIndex((Expr.SetIndex) stmt.expression, true);
+		} else {
+			evaluate(stmt.expression);
+		}
+		return Completion.NORMAL;
 	}
 
 	@Override
-	public Void visitPrintStmt(Stmt.Print stmt) {
-		Object value = evaluate(stmt.expression);
-		System.out.println(stringify(value));
+	public Completion visitPrintStmt(Stmt.Print stmt) {
+		print(evaluate(stmt.expression));
+		return Completion.NORMAL;
+	}
 
-		return null;
+	void print(Object value) {
+		(out != null ? out : System.out).println(stringify(value));
 	}
 
 	@Override
 	public Object visitVariableExpr(Expr.Variable expr) {
-		return lookUpVariable(expr.name, expr);
+		switch (expr.storage) {
+			case Resolver.STACK:
+				return local(expr.slot);
+			case Resolver.UPVALUE:
+				return upvalues[expr.slot].value;
+			case Resolver.CELL:
+				return ((Cell) stack[frame + expr.slot]).value;
+			default:
+				return readGlobal(expr);
+		}
 	}
 
-	private Object lookUpVariable(Token name, Expr expr) {
-		Integer distance = locals.get(expr);
-		if (distance != null) {
-			return environment.getAt(distance, name.lexeme);
-		} else {
-			return globals.get(name);
+	// a slot of the running function's frame
+	Object local(int slot) {
+		int index = frame + slot;
+		Object value = stack[index];
+		if (value == UNBOXED) {
+			return numbers[index]; // escaping into generic code, box it
+		}
+		return value;
+	}
+
+	int top() {
+		return top;
+	}
+
+	// a value pushed as an argument; those are always boxed
+	Object pushed(int index) {
+		return stack[index];
+	}
+
+	// discards the values pushed from `base` on, for a call that didn't need a frame
+	void drop(int base) {
+		top = base;
+	}
+
+	void push(Object value) {
+		if (top == stack.length) {
+			grow(top + 1);
+		}
+		stack[top++] = value;
+	}
+
+	// makes the `size` slots from `base` the running frame of a function closing
+	// over `upvalues`; the arguments are already in the first slots. Returns the
+	// caller's frame, for leave()
+	int enter(int base, int size, Cell[] upvalues) {
+		int caller = frame;
+		frame = base;
+		this.upvalues = upvalues;
+		reserve(base + size);
+		return caller;
+	}
+
+	void leave(int caller, int base, Cell[] callerUpvalues) {
+		frame = caller;
+		top = base;
+		upvalues = callerUpvalues;
+	}
+
+	Cell[] upvalues() {
+		return upvalues;
+	}
+
+	// a captured parameter moves into a cell once the function is entered
+	void box(int slot) {
+		stack[frame + slot] = new Cell(local(slot));
+	}
+
+	// a tail call reuses the frame of the call it replaces
+	void moveArguments(int from, int to, int count) {
+		System.arraycopy(stack, from, stack, to, count);
+	}
+
+	// moves `top` up to `limit`, growing the stack if needed
+	private void reserve(int limit) {
+		if (limit > stack.length) {
+			grow(limit);
+		}
+		top = limit;
+	}
+
+	private void grow(int size) {
+		int capacity = Math.max(size, stack.length * 2);
+		stack = Arrays.copyOf(stack, capacity);
+		numbers = Arrays.copyOf(numbers, capacity);
+	}
+
+	// global accesses go through the cell cached on the site; the cache is only
+	// valid for the Globals it came from, since a tree can be run more than once
+	Object readGlobal(Expr.Variable expr) {
+		Globals.Cell cell = expr.cell;
+		if (cell == null || cell.owner != globals) {
+			cell = globals.cell(expr.name);
+			expr.cell = cell;
 		}
+		return Globals.get(cell, expr.name);
+	}
+
+	void assignGlobal(Expr.Assign expr, Object value) {
+		Globals.Cell cell = expr.cell;
+		if (cell == null || cell.owner != globals) {
+			cell = globals.cell(expr.name);
+			expr.cell = cell;
+		}
+		Globals.assign(cell, expr.name, value);
 	}
 
 	@Override
-	public Void visitVarStmt(Stmt.Var stmt) {
+	public Completion visitVarStmt(Stmt.Var stmt) {
+		if (stmt.storage == Resolver.STACK && stmt.initializer != null && producesDouble(stmt.initializer)) {
+			// like assign(), a computed number goes into the slot unboxed
+			int index = frame + stmt.slot;
+			try {
+				double value = evaluateDouble(stmt.initializer);
+				numbers[index] = value;
+				stack[index] = UNBOXED;
+			} catch (NotANumber e) {
+				stack[index] = e.value;
+			}
+			return Completion.NORMAL;
+		}
+
 		Object value = null;
 		if (stmt.initializer != null) {
 			value = evaluate(stmt.initializer);
 		}
 
-		environment.define(stmt.name.lexeme, value);
-
-		return null;
+		define(stmt.storage, stmt.slot, stmt.name, value);
+		return Completion.NORMAL;
 	}
 
 	@Override
 	public Object visitAssignExpr(Expr.Assign expr) {
 		Object value = evaluate(expr.value);
 
-		Integer distance = locals.get(expr);
-		if (distance != null) {
-			environment.assignAt(distance, expr.name, value);
-		} else {
-			globals.assign(expr.name, value);
+		switch (expr.storage) {
+			case Resolver.STACK:
+				stack[frame + expr.slot] = value;
+				break;
+			case Resolver.UPVALUE:
+				upvalues[expr.slot].value = value;
+				break;
+			case Resolver.CELL:
+				((Cell) stack[frame + expr.slot]).value = value;
+				break;
+			default:
+				assignGlobal(expr, value);
 		}
 
 		return value; // return value since assignment is an expression, e.g. `print a = 2` prints 2
 	}
 
+	// assignment as a statement: numbers computed by specialized arithmetic go
+	// straight into the frame's unboxed storage
+	private void assign(Expr.Assign expr) {
+		if (expr.storage != Resolver.STACK || !producesDouble(expr.value)) {
+			visitAssignExpr(expr);
+			return;
+		}
+
+		// evaluated before touching the arrays, since a call in the expression
+		// may grow the stack
+		int index = frame + expr.slot;
+		try {
+			double value = evaluateDouble(expr.value);
+			numbers[index] = value;
+			stack[index] = UNBOXED;
+		} catch (NotANumber e) {
+			stack[index] = e.value;
+		}
+	}
+
+	private boolean producesDouble(Expr expr) {
+		if (!specializing) {
+			return false;
+		}
+		if (expr instanceof Expr.Binary) {
+			return ((Expr.Binary) expr).node instanceof BinaryNode.Arithmetic;
+		}
+		if (expr instanceof Expr.Unary) {
+			return ((Expr.Unary) expr).node instanceof UnaryNode.NegateDouble;
+		}
+		return false;
+	}
+
 	@Override
-	public Void visitBlockStmt(Stmt.Block stmt) {
-		executeBlock(stmt.statements, new Environment(environment));
-		return null;
+	public Completion visitBlockStmt(Stmt.Block stmt) {
+		// inside a function its frame already covers the block; this is for
+		// blocks at the top level
+		if (frame + stmt.stackSize > top) {
+			reserve(frame + stmt.stackSize);
+		}
+
+		return executeBlock(stmt.statements);
 	}
 
 	@Override
-	public Void visitIfStmt(Stmt.If stmt) {
+	public Completion visitImportStmt(Stmt.Import stmt) {
+		return Completion.NORMAL; // the module ran before the program did, see Modules
+	}
+
+	@Override
+	public Completion visitIfStmt(Stmt.If stmt) {
 		if (isTruthy(evaluate(stmt.condition))) {
-			execute(stmt.thenBranch);
+			return execute(stmt.thenBranch);
 		} else if (stmt.elseBranch != null) {
-			execute(stmt.elseBranch);
+			return execute(stmt.elseBranch);
 		}
 
-		return null;
+		return Completion.NORMAL;
 	}
 
 	@Override
@@ -236,76 +641,274 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	}
 
 	@Override
-	public Void visitWhileStmt(Stmt.While stmt) {
+	public Completion visitWhileStmt(Stmt.While stmt) {
+		if (specializing) {
+			// analyzed on first run, once the Resolver and Optimizer are done with the tree
+			if (!stmt.analyzed) {
+				stmt.counted = CountedLoop.recognize(stmt);
+				stmt.analyzed = true;
+			}
+			if (stmt.counted != null) {
+				return executeCounted(stmt, stmt.counted);
+			}
+		}
+
+		return executeWhile(stmt);
+	}
+
+	private Completion executeWhile(Stmt.While stmt) {
 		while (isTruthy(evaluate(stmt.condition))) {
-			execute(stmt.body);
+			// break and continue would be consumed here; anything else leaves the loop
+			Completion completion = execute(stmt.body);
+			if (completion != Completion.NORMAL) {
+				return completion;
+			}
 		}
 
-		return null;
+		return Completion.NORMAL;
+	}
+
+	// the counter stays an unboxed double in its slot and is compared and stepped
+	// directly. Once the loop finds something other than numbers in the counter or
+	// the bound, it deoptimizes for good and carries on as a plain while loop
+	private Completion executeCounted(Stmt.While stmt, CountedLoop loop) {
+		int index = frame + loop.slot;
+		double bound = 0;
+		if (loop.invariantBound) {
+			Object value = evaluate(loop.bound);
+			if (!(value instanceof Double)) {
+				stmt.counted = null;
+				return executeWhile(stmt);
+			}
+			bound = (double) value;
+		}
+
+		while (true) {
+			Object value = stack[index];
+			double counter;
+			if (value == UNBOXED) {
+				counter = numbers[index];
+			} else if (value instanceof Double) {
+				counter = (double) value;
+			} else {
+				stmt.counted = null;
+				return executeWhile(stmt);
+			}
+
+			if (!loop.invariantBound) {
+				Object limit = local(((Expr.Variable) loop.bound).slot);
+				if (!(limit instanceof Double)) {
+					stmt.counted = null;
+					return executeWhile(stmt);
+				}
+				bound = (double) limit;
+			}
+			if (!loop.comparison.test(counter, bound)) {
+				return Completion.NORMAL;
+			}
+
+			Completion completion = executeBlock(loop.body);
+			if (completion != Completion.NORMAL) {
+				return completion;
+			}
+
+			// the body may have assigned the counter
+			value = stack[index];
+			if (value == UNBOXED) {
+				counter = numbers[index];
+			} else if (value instanceof Double) {
+				counter = (double) value;
+			} else {
+				// the increment reports the error, if any, like it would have anyway
+				stmt.counted = null;
+				execute(loop.increment);
+				return executeWhile(stmt);
+			}
+			numbers[index] = counter + loop.step;
+			stack[index] = UNBOXED;
+		}
 	}
 
 	@Override
 	public Object visitCallExpr(Expr.Call expr) {
-		Object callee = evaluate(expr.callee);
+		return call(evaluate(expr.callee), expr, false);
+	}
+
+	// a call in tail position (`tail`) hands a Lox function back to the trampoline in
+	// LoxFunction.call as a TailCall instead of calling it on top of this frame
+	private Object call(Object callee, Expr.Call expr, boolean tail) {
+		List<Expr> arguments = expr.arguments;
+		try {
+			return call(callee, arguments, expr.paren, tail);
+		} catch (NativeError error) {
+			throw new LoxRuntimeError(expr.paren, error.getMessage());
+		}
+	}
+
+	private Object call(Object callee, List<Expr> arguments, Token paren, boolean tail) {
+		if (callee instanceof LoxFunction && ((LoxFunction) callee).arity() == arguments.size()) {
+			// evaluate the arguments straight into the callee's frame
+			LoxFunction function = (LoxFunction) callee;
+			int base = top;
+			for (int i = 0; i < arguments.size(); i++) {
+				push(evaluate(arguments.get(i)));
+			}
+			return tail ? new TailCall(function, base) : function.call(this, base);
+		}
+
+		// arguments are evaluated before the callee is checked, like they always were
+		switch (arguments.size()) {
+			case 0:
+				return checkCallable(callee, 0, paren).call0(this);
+			case 1: {
+				Object a = evaluate(arguments.get(0));
+				return checkCallable(callee, 1, paren).call1(this, a);
+			}
+			case 2: {
+				Object a = evaluate(arguments.get(0));
+				Object b = evaluate(arguments.get(1));
+				return checkCallable(callee, 2, paren).call2(this, a, b);
+			}
+			case 3: {
+				Object a = evaluate(arguments.get(0));
+				Object b = evaluate(arguments.get(1));
+				Object c = evaluate(arguments.get(2));
+				return checkCallable(callee, 3, paren).call3(this, a, b, c);
+			}
+			case 4: {
+				Object a = evaluate(arguments.get(0));
+				Object b = evaluate(arguments.get(1));
+				Object c = evaluate(arguments.get(2));
+				Object d = evaluate(arguments.get(3));
+				return checkCallable(callee, 4, paren).call4(this, a, b, c, d);
+			}
+			default: {
+				Object[] values = new Object[arguments.size()];
+				for (int i = 0; i < values.length; i++) {
+					values[i] = evaluate(arguments.get(i));
+				}
+				return checkCallable(callee, values.length, paren).call(this, values);
+			}
+		}
+	}
 
-		List<Object> arguments = new ArrayList<>();
-		for (Expr argument : expr.arguments) {
-			arguments.add(evaluate(argument));
+	// entry points for compiled function bodies, which pass their arguments as an array
+	Object call(Object callee, Object[] arguments, Token paren) {
+		try {
+			return checkCallable(callee, arguments.length, paren).call(this, arguments);
+		} catch (NativeError error) {
+			throw new LoxRuntimeError(paren, error.getMessage());
 		}
+	}
 
+	Object tailCall(Object callee, Object[] arguments, Token paren) {
+		LoxCallable function = checkCallable(callee, arguments.length, paren);
+		if (function instanceof LoxFunction) {
+			int base = top;
+			for (Object argument : arguments) {
+				push(argument);
+			}
+			return new TailCall((LoxFunction) function, base);
+		}
+		return call(function, arguments, paren);
+	}
+
+	private static LoxCallable checkCallable(Object callee, int argumentCount, Token paren) {
 		// error to invoke a non-callable, e.g. "bandit"()
 		// throw error interpreter can handle rather than cast class exception that
 		// would cause JVM to die
 		if (!(callee instanceof LoxCallable)) {
-			throw new LoxRuntimeError(expr.paren,
+			throw new LoxRuntimeError(paren,
 					"Can only call functions and classes.");
 		}
 
 		LoxCallable function = (LoxCallable) callee;
 		// design choice to make calling a function called with incorrect
 		// number of args an error rather than discarding or using `undefined`
-		if (arguments.size() != function.arity()) {
-			throw new LoxRuntimeError(expr.paren, "Expected " +
+		if (argumentCount != function.arity()) {
+			throw new LoxRuntimeError(paren, "Expected " +
 					function.arity() + " arguments but got " +
-					arguments.size() + ".");
+					argumentCount + ".");
+		}
+		return function;
+	}
+
+	// `storage` and `slot` of a declaration, as set by the Resolver. Each execution
+	// of a captured declaration gets a fresh Cell, e.g. once per loop iteration
+	private void define(int storage, int slot, Token name, Object value) {
+		if (storage == Resolver.STACK) {
+			stack[frame + slot] = value;
+		} else if (storage == Resolver.CELL) {
+			stack[frame + slot] = new Cell(value);
+		} else {
+			globals.define(name, value);
 		}
-		return function.call(this, arguments);
 	}
 
 	@Override
-	public Void visitFunctionStmt(Stmt.Function stmt) {
-		// pass environment at time of declaration, rather than at call time
-		LoxFunction function = new LoxFunction(stmt, environment);
-		environment.define(stmt.name.lexeme, function);
+	public Completion visitFunctionStmt(Stmt.Function stmt) {
+		// a function that refers to itself captures its own cell, so that has to exist first
+		Cell self = null;
+		if (stmt.storage == Resolver.CELL) {
+			self = new Cell(null);
+			stack[frame + stmt.slot] = self;
+		}
 
-		return null;
+		// capture the cells of the free variables at the time of declaration
+		int[] captures = stmt.captures;
+		Cell[] cells = new Cell[captures.length];
+		for (int i = 0; i < captures.length; i++) {
+			int capture = captures[i];
+			cells[i] = capture >= 0 ? (Cell) stack[frame + capture] : upvalues[-1 - capture];
+		}
+		LoxFunction function = new LoxFunction(stmt, cells);
+
+		if (self != null) {
+			self.value = function;
+		} else {
+			define(stmt.storage, stmt.slot, stmt.name, function);
+		}
+
+		return Completion.NORMAL;
 	}
 
 	@Override
-	public Void visitReturnStmt(Stmt.Return stmt) {
+	public Completion visitReturnStmt(Stmt.Return stmt) {
 		Object value = null;
-		if (stmt.value != null) {
+		if (stmt.tailCall) {
+			Expr.Call call = (Expr.Call) stmt.value;
+			value = call(evaluate(call.callee), call, true);
+		} else if (stmt.value != null) {
 			value = evaluate(stmt.value);
 		}
 
-		// needs to be exception b/c it needs to be able to walk up the stack
-		throw new Return(value);
+		// unwinds by returning Completion.RETURN through every enclosing statement
+		// up to LoxFunction.call, which picks the value up from returnValue
+		returnValue = value;
+		return Completion.RETURN;
 	}
 
-	public void executeBlock(List<Stmt> statements, Environment environment) {
-		Environment previous = this.environment;
-		try {
-			this.environment = environment;
-
-			for (Stmt statement : statements) {
-				execute(statement);
+	// stops at the first statement that doesn't complete normally and passes its
+	// completion on to the enclosing statement
+	public Completion executeBlock(List<Stmt> statements) {
+		// indexed rather than for-each so the hot path doesn't allocate an Iterator
+		for (int i = 0; i < statements.size(); i++) {
+			Completion completion = execute(statements.get(i));
+			if (completion != Completion.NORMAL) {
+				return completion;
 			}
-		} finally {
-			this.environment = previous;
 		}
+		return Completion.NORMAL;
 	}
 
-	private boolean isTruthy(Object object) {
+	// hands the value of the last `return` to the caller and clears it
+	Object takeReturnValue() {
+		Object value = returnValue;
+		returnValue = null;
+		return value;
+	}
+
+	static boolean isTruthy(Object object) {
 		if (object == null) {
 			return false;
 		}
@@ -317,7 +920,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		return true;
 	}
 
-	private boolean isEqual(Object a, Object b) {
+	static boolean isEqual(Object a, Object b) {
 		// nil is only equal ot nil
 		if (a == null && b == null) {
 			return true;
@@ -326,20 +929,30 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			return false;
 		}
 
+		// a string may be a String or a Rope; Rope compares by characters with either
+		if (b instanceof Rope) {
+			return b.equals(a);
+		}
 		return a.equals(b);
 	}
 
-	private void checkNumberOperand(Token operator, Object operand) {
+	// strings are Strings or, once built by concatenation, Ropes
+	static boolean isString(Object value) {
+		return value instanceof String || value instanceof Rope;
+	}
+
+	private static void checkNumberOperand(Token operator, Object operand) {
 		boolean isDouble = operand instanceof Double;
 		if (!isDouble) {
 			throw new LoxRuntimeError(operator, "Operand must be a number");
 		}
 	}
 
-	private void checkNumberOperands(Token operator, Object left, Object right) {
+	private static void checkNumberOperands(Token operator, Object left, Object right) {
 		boolean bothAreDoubles = left instanceof Double && right instanceof Double;
 		if (!bothAreDoubles) {
 			throw new LoxRuntimeError(operator, "Operands must be numbers");
 		}
 	}
+
 }
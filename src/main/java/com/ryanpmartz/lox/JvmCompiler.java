@@ -0,0 +1,579 @@
+package com.ryanpmartz.lox;
+
+import static com.ryanpmartz.lox.ClassFile.ACC_FINAL;
+import static com.ryanpmartz.lox.ClassFile.ACC_PRIVATE;
+import static com.ryanpmartz.lox.ClassFile.ACC_PUBLIC;
+import static com.ryanpmartz.lox.ClassFile.ACONST_NULL;
+import static com.ryanpmartz.lox.ClassFile.AALOAD;
+import static com.ryanpmartz.lox.ClassFile.AASTORE;
+import static com.ryanpmartz.lox.ClassFile.ANEWARRAY;
+import static com.ryanpmartz.lox.ClassFile.ARETURN;
+import static com.ryanpmartz.lox.ClassFile.CHECKCAST;
+import static com.ryanpmartz.lox.ClassFile.DUP;
+import static com.ryanpmartz.lox.ClassFile.GETFIELD;
+import static com.ryanpmartz.lox.ClassFile.GETSTATIC;
+import static com.ryanpmartz.lox.ClassFile.GOTO;
+import static com.ryanpmartz.lox.ClassFile.IFEQ;
+import static com.ryanpmartz.lox.ClassFile.IFNE;
+import static com.ryanpmartz.lox.ClassFile.INVOKESPECIAL;
+import static com.ryanpmartz.lox.ClassFile.INVOKESTATIC;
+import static com.ryanpmartz.lox.ClassFile.INVOKEVIRTUAL;
+import static com.ryanpmartz.lox.ClassFile.POP;
+import static com.ryanpmartz.lox.ClassFile.PUTFIELD;
+import static com.ryanpmartz.lox.ClassFile.RETURN;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// translates the body of a hot Lox function into a JVM class implementing
+// CompiledFunction, so HotSpot can JIT the Lox code itself instead of the
+// visitors. The function's stack slots become JVM locals; free variables are
+// read through its upvalue cells and globals through the interpreter's
+// inline-cached accessors, so the generated code behaves exactly like the
+// tree-walker. Bodies containing nested function declarations are left to the
+// interpreter, so nothing in a compiled body is ever captured.
+class JvmCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+	// calls of a function before it gets compiled
+	static final int HOT_CALLS = 1000;
+
+	private static final String PACKAGE = "com/ryanpmartz/lox/";
+	private static final String OBJECT = "java/lang/Object";
+	private static final String SELF = PACKAGE + "JvmCompiler";
+	private static final String INTERPRETER = PACKAGE + "Interpreter";
+	private static final String CELL = PACKAGE + "Cell";
+	private static final String TOKEN = PACKAGE + "Token";
+	private static final String VARIABLE = PACKAGE + "Expr$Variable";
+	private static final String ASSIGN = PACKAGE + "Expr$Assign";
+
+	private static final String OBJ = "L" + OBJECT + ";";
+	private static final String TOK = "L" + TOKEN + ";";
+	private static final String BINARY = "(" + OBJ + OBJ + TOK + ")" + OBJ;
+
+	// fixed JVM locals of the generated call method
+	private static final int THIS = 0;
+	private static final int INTERPRETER_LOCAL = 1;
+	private static final int UPVALUES = 2;
+	private static final int SCRATCH = 3;
+	private static final int FIRST_VARIABLE = 4; // stack slot 0
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final AtomicInteger classCount = new AtomicInteger();
+
+	private final ClassFile classFile;
+	private final ClassFile.Code code;
+	private final List<Object> constants = new ArrayList<>();
+
+	private static class Unsupported extends RuntimeException {
+		Unsupported() {
+			super(null, null, false, false);
+		}
+	}
+
+	private JvmCompiler(String className) {
+		classFile = new ClassFile(className, OBJECT, PACKAGE + "CompiledFunction");
+		code = classFile.addMethod(ACC_PUBLIC, "call",
+				"(L" + INTERPRETER + ";[L" + CELL + ";)" + OBJ);
+	}
+
+	// sets function.compiled unless that was tried before; it stays null when
+	// the body can't be compiled, so that is only tried once too
+	static void compileOnce(Stmt.Function function) {
+		synchronized (function) {
+			if (!function.compileAttempted) {
+				function.compileAttempted = true;
+				function.compiled = compile(function);
+			}
+		}
+	}
+
+	// returns null when the body uses something the compiler doesn't handle
+	static CompiledFunction compile(Stmt.Function function) {
+		String className = PACKAGE + "Compiled$" + function.name.lexeme + "$" + classCount.incrementAndGet();
+		try {
+			JvmCompiler compiler = new JvmCompiler(className);
+			byte[] bytes = compiler.compileBody(function);
+			Class<?> compiledClass = define(bytes);
+			return (CompiledFunction) compiledClass.getConstructor(Object[].class)
+					.newInstance((Object) compiler.constants.toArray());
+		} catch (Unsupported | IllegalStateException e) {
+			return null;
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Could not load compiled function " + className, e);
+		}
+	}
+
+	private byte[] compileBody(Stmt.Function function) {
+		classFile.addField(ACC_PRIVATE | ACC_FINAL, "constants", "[" + OBJ);
+		ClassFile.Code constructor = classFile.addMethod(ACC_PUBLIC, "<init>", "([" + OBJ + ")V");
+		constructor.load(THIS);
+		constructor.methodInsn(INVOKESPECIAL, OBJECT, "<init>", "()V");
+		constructor.load(THIS);
+		constructor.load(1);
+		constructor.fieldInsn(PUTFIELD, classFile.name(), "constants", "[" + OBJ);
+		constructor.insn(RETURN, 0);
+		constructor.end();
+
+		// the caller pushed the arguments into the first slots of the frame; every
+		// other slot starts out nil
+		for (int slot = 0; slot < function.stackSize; slot++) {
+			if (slot < function.params.size()) {
+				code.load(INTERPRETER_LOCAL);
+				code.intConst(slot);
+				code.methodInsn(INVOKEVIRTUAL, INTERPRETER, "local", "(I)" + OBJ);
+			} else {
+				code.insn(ACONST_NULL, 1);
+			}
+			code.store(FIRST_VARIABLE + slot);
+		}
+		for (Stmt statement : function.body) {
+			compile(statement);
+		}
+
+		// implicit `return nil;`
+		code.insn(ACONST_NULL, 1);
+		code.insn(ARETURN, -1);
+		code.end();
+		return classFile.toByteArray();
+	}
+
+	private void compile(Stmt stmt) {
+		stmt.accept(this);
+	}
+
+	private void compile(Expr expr) {
+		expr.accept(this);
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		for (Stmt statement : stmt.statements) {
+			compile(statement);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		compile(stmt.expression);
+		code.insn(POP, -1);
+		return null;
+	}
+
+	@Override
+	public Void visitFunctionStmt(Stmt.Function stmt) {
+		throw new Unsupported();
+	}
+
+	@Override
+	public Void visitImportStmt(Stmt.Import stmt) {
+		throw new Unsupported(); // only at the top level, never in a function
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		ClassFile.Label elseBranch = new ClassFile.Label();
+		ClassFile.Label end = new ClassFile.Label();
+
+		condition(stmt.condition);
+		code.jump(IFEQ, elseBranch);
+		compile(stmt.thenBranch);
+		code.jump(GOTO, end);
+		code.mark(elseBranch);
+		if (stmt.elseBranch != null) {
+			compile(stmt.elseBranch);
+		}
+		code.mark(end);
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Stmt.Print stmt) {
+		code.load(INTERPRETER_LOCAL);
+		compile(stmt.expression);
+		code.methodInsn(INVOKEVIRTUAL, INTERPRETER, "print", "(" + OBJ + ")V");
+		return null;
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		if (stmt.tailCall) {
+			// hands a TailCall back to the trampoline in LoxFunction.call
+			call((Expr.Call) stmt.value, "tailCall");
+		} else if (stmt.value != null) {
+			compile(stmt.value);
+		} else {
+			code.insn(ACONST_NULL, 1);
+		}
+		code.insn(ARETURN, -1);
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		if (stmt.initializer != null) {
+			compile(stmt.initializer);
+		} else {
+			code.insn(ACONST_NULL, 1);
+		}
+
+		code.store(FIRST_VARIABLE + stmt.slot);
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		ClassFile.Label start = new ClassFile.Label();
+		ClassFile.Label end = new ClassFile.Label();
+
+		code.mark(start);
+		condition(stmt.condition);
+		code.jump(IFEQ, end);
+		compile(stmt.body);
+		code.jump(GOTO, start);
+		code.mark(end);
+		return null;
+	}
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign expr) {
+		compile(expr.value);
+		code.insn(DUP, 1);
+
+		// nothing in a compiled body is captured, so locals are never CELLs
+		if (expr.storage == Resolver.GLOBAL) {
+			code.store(SCRATCH);
+			code.load(INTERPRETER_LOCAL);
+			constant(expr, ASSIGN);
+			code.load(SCRATCH);
+			code.methodInsn(INVOKEVIRTUAL, INTERPRETER, "assignGlobal", "(L" + ASSIGN + ";" + OBJ + ")V");
+		} else if (expr.storage == Resolver.STACK) {
+			code.store(FIRST_VARIABLE + expr.slot);
+		} else {
+			code.store(SCRATCH);
+			upvalue(expr.slot);
+			code.load(SCRATCH);
+			code.fieldInsn(PUTFIELD, CELL, "value", OBJ);
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary expr) {
+		compile(expr.left);
+		compile(expr.right);
+
+		switch (expr.operator.type) {
+			case EQUAL_EQUAL:
+				code.methodInsn(INVOKESTATIC, SELF, "equal", "(" + OBJ + OBJ + ")" + OBJ);
+				return null;
+			case BANG_EQUAL:
+				code.methodInsn(INVOKESTATIC, SELF, "notEqual", "(" + OBJ + OBJ + ")" + OBJ);
+				return null;
+			default:
+				constant(expr.operator, TOKEN);
+				code.methodInsn(INVOKESTATIC, SELF, helper(expr.operator.type), BINARY);
+				return null;
+		}
+	}
+
+	private static String helper(TokenType operator) {
+		switch (operator) {
+			case PLUS:
+				return "add";
+			case MINUS:
+				return "subtract";
+			case STAR:
+				return "multiply";
+			case SLASH:
+				return "divide";
+			case GREATER:
+				return "greater";
+			case GREATER_EQUAL:
+				return "greaterEqual";
+			case LESS:
+				return "less";
+			case LESS_EQUAL:
+				return "lessEqual";
+			default:
+				throw new Unsupported();
+		}
+	}
+
+	@Override
+	public Void visitCallExpr(Expr.Call expr) {
+		call(expr, "call");
+		return null;
+	}
+
+	private void call(Expr.Call expr, String method) {
+		code.load(INTERPRETER_LOCAL);
+		compile(expr.callee);
+
+		code.intConst(expr.arguments.size());
+		code.typeInsn(ANEWARRAY, OBJECT);
+		for (int i = 0; i < expr.arguments.size(); i++) {
+			code.insn(DUP, 1);
+			code.intConst(i);
+			compile(expr.arguments.get(i));
+			code.insn(AASTORE, -3);
+		}
+
+		constant(expr.paren, TOKEN);
+		code.methodInsn(INVOKEVIRTUAL, INTERPRETER, method, "(" + OBJ + "[" + OBJ + TOK + ")" + OBJ);
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping expr) {
+		compile(expr.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitIndexExpr(Expr.Index expr) {
+		compile(expr.object);
+		compile(expr.index);
+		constant(expr.bracket, TOKEN);
+		code.methodInsn(INVOKESTATIC, SELF, "getIndex", "(" + OBJ + OBJ + TOK + ")" + OBJ);
+		return null;
+	}
+
+	@Override
+	public Void visitListLiteralExpr(Expr.ListLiteral expr) {
+		code.intConst(expr.elements.size());
+		code.typeInsn(ANEWARRAY, OBJECT);
+		for (int i = 0; i < expr.elements.size(); i++) {
+			code.insn(DUP, 1);
+			code.intConst(i);
+			compile(expr.elements.get(i));
+			code.insn(AASTORE, -3);
+		}
+
+		code.methodInsn(INVOKESTATIC, SELF, "list", "([" + OBJ + ")" + OBJ);
+		return null;
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal expr) {
+		if (expr.value == null) {
+			code.insn(ACONST_NULL, 1);
+		} else if (expr.value instanceof Boolean) {
+			String name = (Boolean) expr.value ? "TRUE" : "FALSE";
+			code.fieldInsn(GETSTATIC, "java/lang/Boolean", name, "Ljava/lang/Boolean;");
+		} else if (expr.value instanceof String) {
+			code.stringConst((String) expr.value);
+		} else {
+			constant(expr.value, null);
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visitLogicalExpr(Expr.Logical expr) {
+		ClassFile.Label end = new ClassFile.Label();
+
+		compile(expr.left);
+		code.insn(DUP, 1);
+		truthy();
+		code.jump(expr.operator.type == TokenType.OR ? IFNE : IFEQ, end);
+		code.insn(POP, -1);
+		compile(expr.right);
+		code.mark(end);
+		return null;
+	}
+
+	@Override
+	public Void visitSetIndexExpr(Expr.SetIndex expr) {
+		compile(expr.object);
+		compile(expr.index);
+		compile(expr.value);
+		constant(expr.bracket, TOKEN);
+		code.methodInsn(INVOKESTATIC, SELF, "setIndex", "(" + OBJ + OBJ + OBJ + TOK + ")" + OBJ);
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary expr) {
+		compile(expr.right);
+
+		if (expr.operator.type == TokenType.BANG) {
+			code.methodInsn(INVOKESTATIC, SELF, "not", "(" + OBJ + ")" + OBJ);
+		} else {
+			constant(expr.operator, TOKEN);
+			code.methodInsn(INVOKESTATIC, SELF, "negate", "(" + OBJ + TOK + ")" + OBJ);
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visitVariableExpr(Expr.Variable expr) {
+		if (expr.storage == Resolver.GLOBAL) {
+			code.load(INTERPRETER_LOCAL);
+			constant(expr, VARIABLE);
+			code.methodInsn(INVOKEVIRTUAL, INTERPRETER, "readGlobal", "(L" + VARIABLE + ";)" + OBJ);
+		} else if (expr.storage == Resolver.STACK) {
+			code.load(FIRST_VARIABLE + expr.slot);
+		} else {
+			upvalue(expr.slot);
+			code.fieldInsn(GETFIELD, CELL, "value", OBJ);
+		}
+
+		return null;
+	}
+
+	private void upvalue(int index) {
+		code.load(UPVALUES);
+		code.intConst(index);
+		code.insn(AALOAD, -1);
+	}
+
+	private void condition(Expr expr) {
+		compile(expr);
+		truthy();
+	}
+
+	private void truthy() {
+		code.methodInsn(INVOKESTATIC, INTERPRETER, "isTruthy", "(" + OBJ + ")Z");
+	}
+
+	// loads a value from the constants array the class is instantiated with
+	private void constant(Object value, String type) {
+		code.load(THIS);
+		code.fieldInsn(GETFIELD, classFile.name(), "constants", "[" + OBJ);
+		code.intConst(constants.size());
+		code.insn(AALOAD, -1);
+		if (type != null) {
+			code.typeInsn(CHECKCAST, type);
+		}
+		constants.add(value);
+	}
+
+	// hidden classes only exist from Java 15 on and we target 11, so look the
+	// method up reflectively and fall back to a plain class in this package
+	private static Class<?> define(byte[] bytes) throws ReflectiveOperationException {
+		Method defineHiddenClass = hiddenClassDefiner();
+		if (defineHiddenClass == null) {
+			return LOOKUP.defineClass(bytes);
+		}
+
+		Class<?> optionType = defineHiddenClass.getParameterTypes()[2];
+		Object noOptions = Array.newInstance(optionType.getComponentType(), 0);
+		MethodHandles.Lookup hidden = (MethodHandles.Lookup) defineHiddenClass.invoke(LOOKUP, bytes, true, noOptions);
+		return hidden.lookupClass();
+	}
+
+	private static Method hiddenClassDefiner() {
+		for (Method method : MethodHandles.Lookup.class.getMethods()) {
+			if (method.getName().equals("defineHiddenClass") && method.getParameterCount() == 3) {
+				return method;
+			}
+		}
+		return null;
+	}
+
+	// runtime support called from generated code; same fast paths as the
+	// specialized nodes, anything else goes through the interpreter's operators
+
+	static Object add(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (double) left + (double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	static Object subtract(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (double) left - (double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	static Object multiply(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (double) left * (double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	static Object divide(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (double) left / (double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	static Object greater(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (double) left > (double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	static Object greaterEqual(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (double) left >= (double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	static Object less(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (double) left < (double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	static Object lessEqual(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (double) left <= (double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	static Object equal(Object left, Object right) {
+		return Interpreter.isEqual(left, right);
+	}
+
+	static Object notEqual(Object left, Object right) {
+		return !Interpreter.isEqual(left, right);
+	}
+
+	static Object negate(Object right, Token operator) {
+		if (right instanceof Double) {
+			return -(double) right;
+		}
+		return Interpreter.unary(operator, right);
+	}
+
+	static Object not(Object right) {
+		return !Interpreter.isTruthy(right);
+	}
+
+	static Object list(Object[] elements) {
+		return LoxList.of(elements);
+	}
+
+	static Object getIndex(Object object, Object index, Token bracket) {
+		try {
+			return LoxList.get(object, index);
+		} catch (NativeError error) {
+			throw new LoxRuntimeError(bracket, error.getMessage());
+		}
+	}
+
+	static Object setIndex(Object object, Object index, Object value, Token bracket) {
+		try {
+			LoxList.set(object, index, value);
+			return value;
+		} catch (NativeError error) {
+			throw new LoxRuntimeError(bracket, error.getMessage());
+		}
+	}
+}
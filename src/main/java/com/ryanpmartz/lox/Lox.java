@@ -5,30 +5,126 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Lox {
 
-	private static final Interpreter interpreter = new Interpreter();
+	private static Interpreter interpreter;
+	private static VM vm;
 
 	static boolean hadError = false;
 	static boolean hadRuntimeError = false;
 
+	// compile errors reported on a thread inside collectErrors() go to its list
+	// instead of stderr, so Engines can compile on several threads at once
+	private static final ThreadLocal<List<String>> collecting = new ThreadLocal<>();
+
+	// --engine=vm compiles to bytecode instead of walking the tree
+	private static boolean useVm = false;
+
+	// --no-specialize keeps every operator on the generic path, for comparison
+	private static boolean specialize = true;
+
+	// --no-jit never hands hot functions to JvmCompiler
+	private static boolean jit = true;
+
+	// --no-opt runs the tree exactly as parsed, for differential testing of the Optimizer
+	private static boolean optimize = true;
+
+	// --memoize caches the results of functions Purity proves pure, in the tree
+	// engine; --memo-stats also reports how often each cache hit
+	private static boolean memoize = false;
+	private static boolean memoStats = false;
+	private static final List<Stmt.Function> memoized = new ArrayList<>();
+
+	// --compile only fills the ProgramCache entry for the script, without running
+	// it; --no-cache neither reads nor writes entries
+	private static boolean compileOnly = false;
+	private static boolean cache = true;
+
+	// --train runs a corpus of scripts instead of one, for the class list the
+	// cds profile in pom.xml builds its class-data archive from
+	private static boolean train = false;
+
+	// the modules loaded into the interpreter's globals so far, so importing one
+	// again in the REPL doesn't run it twice
+	private static final Modules.Session modules = new Modules.Session();
+
 	public static void main(String[] args) throws IOException {
-		if (args.length > 1) {
-			System.out.println("Usage: jlox [script]");
-			System.out.println(64); // unix sysexits.h code for incorrect usage
-		} else if (args.length == 1) {
-			runFile(args[0]);
+		List<String> scripts = new ArrayList<>();
+		for (String arg : args) {
+			if (arg.equals("--engine=vm")) {
+				useVm = true;
+			} else if (arg.equals("--engine=tree")) {
+				useVm = false;
+			} else if (arg.equals("--no-specialize")) {
+				specialize = false;
+			} else if (arg.equals("--no-jit")) {
+				jit = false;
+			} else if (arg.equals("--no-opt")) {
+				optimize = false;
+			} else if (arg.equals("--memoize")) {
+				memoize = true;
+			} else if (arg.equals("--memo-stats")) {
+				memoize = true;
+				memoStats = true;
+			} else if (arg.equals("--compile")) {
+				compileOnly = true;
+			} else if (arg.equals("--no-cache")) {
+				cache = false;
+			} else if (arg.equals("--train")) {
+				train = true;
+			} else if (arg.startsWith("--")) {
+				usage();
+				return;
+			} else {
+				scripts.add(arg);
+			}
+		}
+
+		interpreter = new Interpreter(specialize, jit);
+		vm = new VM(interpreter);
+
+		if (scripts.size() > 1 || ((compileOnly || train) && scripts.isEmpty())) {
+			usage();
+		} else if (train) {
+			train(Paths.get(scripts.get(0)));
+		} else if (scripts.size() == 1) {
+			runFile(scripts.get(0));
 		} else {
 			runPrompt();
 		}
 	}
 
+	private static void usage() {
+		System.out.println("Usage: jlox [--engine=tree|vm] [--no-specialize] [--no-jit] [--no-opt] [--memoize] [--memo-stats] [--compile] [--no-cache] [--train corpus] [script]");
+		System.out.println(64); // unix sysexits.h code for incorrect usage
+	}
+
 	private static void runFile(String path) throws IOException {
-		byte[] bytes = Files.readAllBytes(Paths.get(path));
-		run(new String(bytes, Charset.defaultCharset()));
+		Path script = Paths.get(path).toAbsolutePath();
+		String source = new String(Files.readAllBytes(script), Charset.defaultCharset());
+
+		List<Stmt> statements = cache ? ProgramCache.load(script, source) : null;
+		if (statements == null) {
+			statements = Modules.load(source, script.getParent(), modules);
+			if (cache && statements != null) {
+				ProgramCache.store(script, source, statements, modules.ran());
+			}
+		}
+		if (statements != null && !compileOnly) {
+			run(statements);
+		}
+
+		if (memoStats) {
+			printMemoStats();
+		}
 
 		if (hadError) {
 			System.exit(65);
@@ -39,37 +135,83 @@ public class Lox {
 		}
 	}
 
+	// runs every script in the `corpus` directory twice: compiled and stored in the
+	// ProgramCache, then loaded back from it, so that between them they load the
+	// classes both a first and a later run of a script do
+	private static void train(Path corpus) throws IOException {
+		List<Path> scripts;
+		try (Stream<Path> files = Files.list(corpus)) {
+			scripts = files.filter(file -> file.toString().endsWith(".lox")).sorted().collect(Collectors.toList());
+		}
+
+		for (Path script : scripts) {
+			script = script.toAbsolutePath();
+			String source = new String(Files.readAllBytes(script), Charset.defaultCharset());
+			Modules.Session session = new Modules.Session();
+			List<Stmt> statements = Modules.load(source, script.getParent(), session);
+			if (statements == null) {
+				continue;
+			}
+			ProgramCache.store(script, source, statements, session.ran());
+			run(statements);
+
+			List<Stmt> cached = ProgramCache.load(script, source);
+			run(cached != null ? cached : statements);
+		}
+	}
+
 	private static void runPrompt() throws IOException {
+		// purity is decided for a whole program, and a later line could redefine a
+		// global that an earlier function was proven pure with
+		memoize = false;
+
 		InputStreamReader input = new InputStreamReader(System.in);
 		BufferedReader reader = new BufferedReader(input);
 
 		for (; ; ) {
 			System.out.print("> ");
-			run(reader.readLine());
+			run(reader.readLine(), Paths.get(""));
 			hadError = false;
 		}
 	}
 
-	private static void run(String source) {
-		Scanner scanner = new Scanner(source);
-		List<Token> tokens = scanner.scanTokens();
+	// imports in `source` are relative to `directory`
+	private static void run(String source, Path directory) {
+		// scans, parses and resolves the source and every module it imports
+		List<Stmt> statements = Modules.load(source, directory, modules);
+		if (statements != null) {
+			run(statements);
+		}
+	}
 
-		Parser parser = new Parser(tokens);
-		List<Stmt> statements = parser.parse();
+	// runs a resolved program
+	private static void run(List<Stmt> statements) {
+		if (optimize) {
+			statements = new Optimizer().optimize(statements);
+		}
 
-		if (hadError) {
-			return;
+		if (memoize && !useVm) {
+			memoized.addAll(Purity.memoize(statements));
 		}
 
-		// do not run resolver if parser has errors
-		Resolver resolver = new Resolver(interpreter);
-		resolver.resolve(statements);
+		if (useVm) {
+			VmFunction script = new BytecodeCompiler().compile(statements);
+			if (hadError) {
+				return;
+			}
 
-		if (hadError) {
-			return;  // exit if resolution pass fails
+			vm.interpret(script);
+		} else {
+			interpreter.interpret(statements);
 		}
+	}
 
-		interpreter.interpret(statements);
+	private static void printMemoStats() {
+		for (Stmt.Function function : memoized) {
+			Memo memo = function.memo;
+			System.err.println("[line " + function.name.line + "] memo " + function.name.lexeme + ": "
+					+ memo.hits() + " hits, " + memo.misses() + " misses, " + memo.size() + " cached");
+		}
 	}
 
 	static void error(int line, String message) {
@@ -77,16 +219,42 @@ public class Lox {
 	}
 
 	static void report(int line, String where, String message) {
-		System.err.println("[line " + line + "] Error" + where + ": " + message);
+		report("[line " + line + "] Error" + where + ": " + message);
+	}
+
+	static void report(String error) {
+		List<String> errors = collecting.get();
+		if (errors != null) {
+			errors.add(error);
+			return;
+		}
+
+		System.err.println(error);
 		hadError = true;
 	}
 
+	// runs `action` with the compile errors it reports added to `errors`
+	static <T> T collectErrors(List<String> errors, Supplier<T> action) {
+		List<String> enclosing = collecting.get();
+		collecting.set(errors);
+		try {
+			return action.get();
+		} finally {
+			collecting.set(enclosing);
+		}
+	}
+
 	static void runtimeError(LoxRuntimeError error) {
-		System.err.println(error.getMessage() +
-				"\n[line " + error.token.line + "]");
+		System.err.println(describe(error));
 		hadRuntimeError = true;
 	}
 
+	static String describe(LoxRuntimeError error) {
+		// prefixed with the module like Modules prefixes compile errors
+		String message = error.module == null ? error.getMessage() : error.module + ": " + error.getMessage();
+		return message + "\n[line " + error.line + "]";
+	}
+
 	static void error(Token token, String message) {
 		if (token.type == TokenType.EOF) {
 			report(token.line, " at end", message);
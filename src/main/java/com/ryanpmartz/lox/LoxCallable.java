@@ -1,10 +1,33 @@
 package com.ryanpmartz.lox;
 
-import java.util.List;
-
 interface LoxCallable {
 
 	int arity();
 
-	Object call(Interpreter interpreter, List<Object> arguments);
+	// callers check the arity first and then use the entry point for the number
+	// of arguments, so calls with up to four arguments never allocate an argument
+	// array. By default they all funnel into the varargs form; implementations
+	// override the ones they can handle directly.
+
+	default Object call0(Interpreter interpreter) {
+		return call(interpreter, new Object[0]);
+	}
+
+	default Object call1(Interpreter interpreter, Object a) {
+		return call(interpreter, new Object[]{a});
+	}
+
+	default Object call2(Interpreter interpreter, Object a, Object b) {
+		return call(interpreter, new Object[]{a, b});
+	}
+
+	default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+		return call(interpreter, new Object[]{a, b, c});
+	}
+
+	default Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+		return call(interpreter, new Object[]{a, b, c, d});
+	}
+
+	Object call(Interpreter interpreter, Object[] arguments);
 }
@@ -0,0 +1,20 @@
+package com.ryanpmartz.lox;
+
+import java.util.Collections;
+import java.util.List;
+
+// a program that didn't compile; carries every error reported, in the same
+// format the command line prints them
+public class LoxCompileError extends RuntimeException {
+
+	private final List<String> errors;
+
+	LoxCompileError(List<String> errors) {
+		super(String.join("\n", errors));
+		this.errors = Collections.unmodifiableList(errors);
+	}
+
+	public List<String> errors() {
+		return errors;
+	}
+}
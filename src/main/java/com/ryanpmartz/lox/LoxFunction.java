@@ -1,15 +1,15 @@
 package com.ryanpmartz.lox;
 
-import java.util.List;
-
 public class LoxFunction implements LoxCallable {
 
 	private final Stmt.Function declaration;
-	private final Environment closure;
+	// cells of the free variables, captured when the declaration ran; nothing
+	// else of the enclosing scopes stays reachable from the function
+	private final Cell[] upvalues;
 
-	public LoxFunction(Stmt.Function declaration, Environment closure) {
+	LoxFunction(Stmt.Function declaration, Cell[] upvalues) {
 		this.declaration = declaration;
-		this.closure = closure;
+		this.upvalues = upvalues;
 	}
 
 	@Override
@@ -17,23 +17,125 @@ public class LoxFunction implements LoxCallable {
 		return declaration.params.size();
 	}
 
+	// the arguments are pushed onto the interpreter's stack, where they become
+	// the first slots of the callee's frame
+
+	@Override
+	public Object call0(Interpreter interpreter) {
+		return call(interpreter, interpreter.top());
+	}
+
+	@Override
+	public Object call1(Interpreter interpreter, Object a) {
+		int base = interpreter.top();
+		interpreter.push(a);
+		return call(interpreter, base);
+	}
+
+	@Override
+	public Object call2(Interpreter interpreter, Object a, Object b) {
+		int base = interpreter.top();
+		interpreter.push(a);
+		interpreter.push(b);
+		return call(interpreter, base);
+	}
+
+	@Override
+	public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+		int base = interpreter.top();
+		interpreter.push(a);
+		interpreter.push(b);
+		interpreter.push(c);
+		return call(interpreter, base);
+	}
+
+	@Override
+	public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+		int base = interpreter.top();
+		interpreter.push(a);
+		interpreter.push(b);
+		interpreter.push(c);
+		interpreter.push(d);
+		return call(interpreter, base);
+	}
+
 	@Override
-	public Object call(Interpreter interpreter, List<Object> arguments) {
-		// create a new environment after each call not after each declaration (recursion)
-		Environment environment = new Environment(closure);
-		for (int i = 0; i < declaration.params.size(); i++) {
-			Token token = declaration.params.get(i);
-			environment.define(token.lexeme, arguments.get(i));
+	public Object call(Interpreter interpreter, Object[] arguments) {
+		int base = interpreter.top();
+		for (Object argument : arguments) {
+			interpreter.push(argument);
 		}
+		return call(interpreter, base);
+	}
 
-		try {
-			interpreter.executeBlock(declaration.body, environment);
-		} catch (Return returnValue) {
-			return returnValue.value;
+	// the arguments were pushed from `base` on
+	Object call(Interpreter interpreter, int base) {
+		Memo memo = declaration.memo;
+		if (memo == null) {
+			return run(interpreter, base);
+		}
+
+		Object key = Memo.key(interpreter, base, arity());
+		if (key == Memo.UNCACHEABLE) {
+			return run(interpreter, base);
+		}
+
+		Object result = memo.get(key);
+		if (result != Memo.MISS) {
+			interpreter.drop(base);
+			return result;
+		}
+
+		// a call that fails throws before anything is cached
+		result = run(interpreter, base);
+		memo.put(key, result);
+		return result;
+	}
+
+	private Object run(Interpreter interpreter, int base) {
+		// calls in tail position come back as a TailCall instead of nesting another
+		// call, so chains of them run in constant Java stack
+		LoxFunction function = this;
+		while (true) {
+			Object result = function.invoke(interpreter, base);
+			if (!(result instanceof TailCall)) {
+				return result;
+			}
+
+			// the finished frame is free again, so the next call reuses it
+			TailCall tailCall = (TailCall) result;
+			function = tailCall.function;
+			interpreter.moveArguments(tailCall.arguments, base, function.arity());
 		}
+	}
 
+	// runs the body once; may return a TailCall for call() to continue with
+	private Object invoke(Interpreter interpreter, int base) {
+		Cell[] callerUpvalues = interpreter.upvalues();
+		int caller = interpreter.enter(base, declaration.stackSize, upvalues);
+		try {
+			if (declaration.compiled != null) {
+				return declaration.compiled.call(interpreter, upvalues);
+			}
+			if (interpreter.compiling && ++declaration.calls == JvmCompiler.HOT_CALLS) {
+				// tasks calling the same function race on the count, so this can
+				// come round more than once and on several threads at a time;
+				// compileOnce() only ever compiles the first time
+				JvmCompiler.compileOnce(declaration);
+			}
+
+			for (int param : declaration.capturedParams) {
+				interpreter.box(param);
+			}
 
-		return null;
+			if (interpreter.executeBlock(declaration.body) == Completion.RETURN) {
+				return interpreter.takeReturnValue();
+			}
+
+			return null;
+		} finally {
+			interpreter.leave(caller, base, callerUpvalues);
+		}
 	}
 
 	@Override
@@ -0,0 +1,229 @@
+package com.ryanpmartz.lox;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+// the list value, `[1, 2, 3]`. While every element is a number the elements
+// live unboxed in a double[]; storing anything else moves them to an Object[],
+// and sort() moves them back once they are all numbers again. Lists are mutable
+// and compare by identity. Like every other value they aren't synchronized, so
+// tasks sharing a list coordinate through channels.
+final class LoxList {
+
+	// the values being printed on this thread; one met again inside itself, even
+	// through other lists or maps, prints as [...] instead of recursing forever
+	static final ThreadLocal<Set<Object>> printing =
+			ThreadLocal.withInitial(() -> Collections.newSetFromMap(new IdentityHashMap<>()));
+
+	// exactly one of these is in use
+	private double[] numbers;
+	private Object[] values;
+	private int size = 0;
+
+	LoxList(int capacity) {
+		numbers = new double[capacity];
+	}
+
+	static LoxList of(Object[] elements) {
+		LoxList list = new LoxList(elements.length);
+		for (Object element : elements) {
+			list.add(element);
+		}
+		return list;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean holdsNumbers() {
+		return numbers != null;
+	}
+
+	// only while holdsNumbers()
+	double number(int index) {
+		return numbers[index];
+	}
+
+	Object get(int index) {
+		return numbers != null ? (Object) numbers[index] : values[index];
+	}
+
+	void set(int index, Object value) {
+		if (numbers != null) {
+			if (value instanceof Double) {
+				numbers[index] = (double) value;
+				return;
+			}
+			box();
+		}
+		values[index] = value;
+	}
+
+	void setNumber(int index, double value) {
+		if (numbers != null) {
+			numbers[index] = value;
+		} else {
+			values[index] = value;
+		}
+	}
+
+	void add(Object value) {
+		if (numbers != null && !(value instanceof Double)) {
+			box();
+		}
+
+		if (numbers != null) {
+			if (size == numbers.length) {
+				numbers = Arrays.copyOf(numbers, grown(size));
+			}
+			numbers[size++] = (double) value;
+		} else {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, grown(size));
+			}
+			values[size++] = value;
+		}
+	}
+
+	Object removeLast() {
+		if (size == 0) {
+			throw new NativeError("Can't pop from an empty list.");
+		}
+
+		size--;
+		if (numbers != null) {
+			return numbers[size];
+		}
+		Object last = values[size];
+		values[size] = null;
+		return last;
+	}
+
+	void sort() {
+		if (numbers != null || unbox()) {
+			Arrays.sort(numbers, 0, size);
+			return;
+		}
+
+		String[] strings = new String[size];
+		for (int i = 0; i < size; i++) {
+			if (!Interpreter.isString(values[i])) {
+				throw new NativeError("Can only sort lists of numbers or of strings.");
+			}
+			strings[i] = values[i].toString();
+		}
+		Arrays.sort(strings);
+		System.arraycopy(strings, 0, values, 0, size);
+	}
+
+	private void box() {
+		values = new Object[numbers.length];
+		for (int i = 0; i < size; i++) {
+			values[i] = numbers[i];
+		}
+		numbers = null;
+	}
+
+	// goes back to unboxed numbers when every element is one again, as after
+	// popping the only string; false, changing nothing, otherwise
+	private boolean unbox() {
+		for (int i = 0; i < size; i++) {
+			if (!(values[i] instanceof Double)) {
+				return false;
+			}
+		}
+
+		numbers = new double[values.length];
+		for (int i = 0; i < size; i++) {
+			numbers[i] = (double) values[i];
+		}
+		values = null;
+		return true;
+	}
+
+	private static int grown(int capacity) {
+		return capacity + (capacity >> 1) + 8;
+	}
+
+	// `index` as a position in the list
+	int index(double index) {
+		return position(index, size);
+	}
+
+	static int position(double index, int size) {
+		int position = (int) index;
+		if (position != index) {
+			throw new NativeError("List index must be a whole number.");
+		}
+		if (position < 0 || position >= size) {
+			throw new NativeError("List index out of range.");
+		}
+		return position;
+	}
+
+	// object[index] for any two values; maps are indexed by key
+	static Object get(Object object, Object index) {
+		if (object instanceof LoxMap) {
+			return ((LoxMap) object).get(index);
+		}
+		if (object instanceof DoubleArray) {
+			DoubleArray array = (DoubleArray) object;
+			return array.values[array.index(checkIndex(index))];
+		}
+		LoxList list = indexed(object);
+		return list.get(list.index(checkIndex(index)));
+	}
+
+	// object[index] = value for any three values
+	static void set(Object object, Object index, Object value) {
+		if (object instanceof LoxMap) {
+			((LoxMap) object).put(index, value);
+			return;
+		}
+		if (object instanceof DoubleArray) {
+			DoubleArray array = (DoubleArray) object;
+			array.set(array.index(checkIndex(index)), value);
+			return;
+		}
+		LoxList list = indexed(object);
+		list.set(list.index(checkIndex(index)), value);
+	}
+
+	static LoxList indexed(Object object) {
+		if (!(object instanceof LoxList)) {
+			throw new NativeError("Only lists, maps and double arrays can be indexed.");
+		}
+		return (LoxList) object;
+	}
+
+	static double checkIndex(Object index) {
+		if (!(index instanceof Double)) {
+			throw new NativeError("List index must be a whole number.");
+		}
+		return (double) index;
+	}
+
+	@Override
+	public String toString() {
+		Set<Object> printing = LoxList.printing.get();
+		if (!printing.add(this)) {
+			return "[...]";
+		}
+
+		try {
+			StringBuilder text = new StringBuilder("[");
+			for (int i = 0; i < size; i++) {
+				if (i > 0) {
+					text.append(", ");
+				}
+				text.append(Interpreter.stringify(get(i)));
+			}
+			return text.append(']').toString();
+		} finally {
+			printing.remove(this);
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package com.ryanpmartz.lox;
+
+import java.util.Set;
+
+// the map value, made by `map()`. Keys are compared like `==` compares them,
+// and entries are visited in the order their keys were first put. The entries
+// live in insertion order in parallel arrays; an open-addressing table of entry
+// positions finds them by hash. Removing an entry leaves a hole in the arrays
+// until the next resize packs them. Numbers hash on their bits, so -0 and 0 are
+// different keys and every NaN is the same one, just as they compare. Like lists
+// these are mutable and aren't synchronized.
+final class LoxMap {
+
+	// in keys[] where an entry has been removed
+	private static final Object REMOVED = new Object();
+
+	private Object[] keys = new Object[8];
+	private Object[] values = new Object[8];
+	private int[] hashes = new int[8];
+	// entries used so far, counting removed ones
+	private int entries = 0;
+	private int size = 0;
+
+	// entry position + 1 per bucket, 0 is empty; a bucket keeps pointing at a
+	// removed entry so probes for later keys still pass through it
+	private int[] table = new int[16];
+
+	int size() {
+		return size;
+	}
+
+	// the value for `key`, or null (nil) when there's none
+	Object get(Object key) {
+		int entry = find(key);
+		return entry < 0 ? null : values[entry];
+	}
+
+	boolean has(Object key) {
+		return find(key) >= 0;
+	}
+
+	void put(Object key, Object value) {
+		if (key instanceof Rope) {
+			key = key.toString(); // keep the flat String, not the pieces
+		}
+
+		int hash = hash(key);
+		int mask = table.length - 1;
+		int bucket = hash & mask;
+		for (; table[bucket] != 0; bucket = (bucket + 1) & mask) {
+			int entry = table[bucket] - 1;
+			if (hashes[entry] == hash && matches(keys[entry], key)) {
+				values[entry] = value;
+				return;
+			}
+		}
+
+		if (entries == keys.length) {
+			resize();
+			put(key, value);
+			return;
+		}
+
+		keys[entries] = key;
+		values[entries] = value;
+		hashes[entries] = hash;
+		entries++;
+		size++;
+		table[bucket] = entries;
+	}
+
+	// removes the entry for `key` and returns its value, or null if there was none
+	Object remove(Object key) {
+		int entry = find(key);
+		if (entry < 0) {
+			return null;
+		}
+
+		Object value = values[entry];
+		keys[entry] = REMOVED;
+		values[entry] = null;
+		size--;
+		return value;
+	}
+
+	// the keys, or the values, in insertion order
+	LoxList keys() {
+		return collect(keys);
+	}
+
+	LoxList values() {
+		return collect(values);
+	}
+
+	private LoxList collect(Object[] column) {
+		LoxList list = new LoxList(size);
+		for (int i = 0; i < entries; i++) {
+			if (keys[i] != REMOVED) {
+				list.add(column[i]);
+			}
+		}
+		return list;
+	}
+
+	// position of the entry for `key`, or -1
+	private int find(Object key) {
+		int mask = table.length - 1;
+		if (key instanceof Double) {
+			// numbers match on their bits, which is how Double.equals compares them
+			long bits = Double.doubleToLongBits((double) key);
+			int hash = numberHash(bits);
+			for (int bucket = hash & mask; table[bucket] != 0; bucket = (bucket + 1) & mask) {
+				int entry = table[bucket] - 1;
+				if (hashes[entry] == hash && keys[entry] instanceof Double
+						&& Double.doubleToLongBits((double) keys[entry]) == bits) {
+					return entry;
+				}
+			}
+			return -1;
+		}
+
+		if (key instanceof Rope) {
+			key = key.toString();
+		}
+		if (key instanceof String) {
+			// String caches its hash, so a lookup by a string seen before doesn't rescan it
+			int hash = spread(key.hashCode());
+			for (int bucket = hash & mask; table[bucket] != 0; bucket = (bucket + 1) & mask) {
+				int entry = table[bucket] - 1;
+				if (hashes[entry] == hash && key.equals(keys[entry])) {
+					return entry;
+				}
+			}
+			return -1;
+		}
+
+		int hash = hash(key);
+		for (int bucket = hash & mask; table[bucket] != 0; bucket = (bucket + 1) & mask) {
+			int entry = table[bucket] - 1;
+			if (hashes[entry] == hash && matches(keys[entry], key)) {
+				return entry;
+			}
+		}
+		return -1;
+	}
+
+	// keys are never Ropes, see put()
+	private static boolean matches(Object stored, Object key) {
+		return stored != REMOVED && Interpreter.isEqual(stored, key);
+	}
+
+	private static int hash(Object key) {
+		if (key == null) {
+			return 0;
+		}
+		if (key instanceof Double) {
+			return numberHash(Double.doubleToLongBits((double) key));
+		}
+		return spread(key.hashCode());
+	}
+
+	private static int numberHash(long bits) {
+		return spread((int) (bits ^ (bits >>> 32)));
+	}
+
+	// whole numbers differ only in their high bits, so mix those into the low ones
+	private static int spread(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	// packs the live entries and sizes the table for twice as many
+	private void resize() {
+		int capacity = 8;
+		while (capacity < size * 2) {
+			capacity *= 2;
+		}
+		Object[] oldKeys = keys;
+		Object[] oldValues = values;
+		int[] oldHashes = hashes;
+		int oldEntries = entries;
+
+		keys = new Object[capacity];
+		values = new Object[capacity];
+		hashes = new int[capacity];
+		table = new int[capacity * 2];
+		entries = 0;
+
+		int mask = table.length - 1;
+		for (int i = 0; i < oldEntries; i++) {
+			if (oldKeys[i] == REMOVED) {
+				continue;
+			}
+			keys[entries] = oldKeys[i];
+			values[entries] = oldValues[i];
+			hashes[entries] = oldHashes[i];
+			entries++;
+
+			int bucket = oldHashes[i] & mask;
+			while (table[bucket] != 0) {
+				bucket = (bucket + 1) & mask;
+			}
+			table[bucket] = entries;
+		}
+	}
+
+	@Override
+	public String toString() {
+		// shares LoxList's set, so cycles through lists and maps both end
+		Set<Object> printing = LoxList.printing.get();
+		if (!printing.add(this)) {
+			return "{...}";
+		}
+
+		try {
+			StringBuilder text = new StringBuilder("{");
+			for (int i = 0; i < entries; i++) {
+				if (keys[i] == REMOVED) {
+					continue;
+				}
+				if (text.length() > 1) {
+					text.append(", ");
+				}
+				text.append(Interpreter.stringify(keys[i])).append(": ").append(Interpreter.stringify(values[i]));
+			}
+			return text.append('}').toString();
+		} finally {
+			printing.remove(this);
+		}
+	}
+}
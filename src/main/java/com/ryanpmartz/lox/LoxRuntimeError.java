@@ -3,9 +3,22 @@ package com.ryanpmartz.lox;
 public class LoxRuntimeError extends RuntimeException {
 
 	final Token token;
+	final int line;
+	// see Token.module
+	final String module;
 
 	LoxRuntimeError(Token token, String message) {
 		super(message);
 		this.token = token;
+		this.line = token.line;
+		this.module = token.module;
+	}
+
+	// the bytecode VM only keeps line and module tables, not the original tokens
+	LoxRuntimeError(int line, String module, String message) {
+		super(message);
+		this.token = null;
+		this.line = line;
+		this.module = module;
 	}
 }
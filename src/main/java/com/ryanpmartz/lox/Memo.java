@@ -0,0 +1,88 @@
+package com.ryanpmartz.lox;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// results of a pure function by the values of its arguments, see Purity. Holds
+// at most CAPACITY results and evicts the least recently used one beyond that.
+// Belongs to the declaration, which is fine since a pure function has no free
+// variables that could differ between its closures.
+final class Memo {
+
+	static final int CAPACITY = 4096;
+
+	// key() for arguments that can't be compared by value, like functions
+	static final Object UNCACHEABLE = new Object();
+	// get() for arguments that haven't been seen yet; null is a cached nil
+	static final Object MISS = new Object();
+
+	private static final Object NO_ARGUMENTS = new Object();
+
+	private final Map<Object, Object> results = new LinkedHashMap<Object, Object>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+			return size() > CAPACITY;
+		}
+	};
+
+	private long hits = 0;
+	private long misses = 0;
+
+	// the key for `arity` arguments pushed from `base`
+	static Object key(Interpreter interpreter, int base, int arity) {
+		if (arity == 0) {
+			return NO_ARGUMENTS;
+		}
+		if (arity == 1) {
+			return value(interpreter.pushed(base));
+		}
+
+		Object[] values = new Object[arity];
+		for (int i = 0; i < arity; i++) {
+			values[i] = value(interpreter.pushed(base + i));
+			if (values[i] == UNCACHEABLE) {
+				return UNCACHEABLE;
+			}
+		}
+		return Arrays.asList(values);
+	}
+
+	// ropes flatten so equal strings hash and compare alike whichever form they're in
+	private static Object value(Object argument) {
+		if (argument == null || argument instanceof Double || argument instanceof Boolean
+				|| argument instanceof String) {
+			return argument;
+		}
+		if (argument instanceof Rope) {
+			return argument.toString();
+		}
+		return UNCACHEABLE;
+	}
+
+	synchronized Object get(Object key) {
+		Object result = results.getOrDefault(key, MISS);
+		if (result == MISS) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return result;
+	}
+
+	synchronized void put(Object key, Object result) {
+		results.put(key, result);
+	}
+
+	synchronized long hits() {
+		return hits;
+	}
+
+	synchronized long misses() {
+		return misses;
+	}
+
+	synchronized int size() {
+		return results.size();
+	}
+}
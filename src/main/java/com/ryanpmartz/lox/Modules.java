@@ -0,0 +1,309 @@
+package com.ryanpmartz.lox;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.concurrent.ForkJoinTask;
+
+// `import "path";`. A program is its main source plus every file it imports,
+// directly or not, and each file is a module with its own top-level scope: its
+// top-level variables and functions are its exports, which the files importing
+// it see by name, and it can't see the top-level names of its importers. A name
+// a file neither declares nor imports is one of the program's globals, like the
+// natives. When two imports export the same name the later one wins.
+//
+// The scopes are kept apart by renaming before parsing: in a module every
+// identifier spelled like one of its top-level declarations gets a symbol
+// qualified with the module's path, and in an importer every identifier spelled
+// like an export gets the exporting module's symbol. The main source's own
+// top-level names are qualified too, with MAIN, which no path can be, so a name
+// left free in a module can't bind to a variable of the program importing it;
+// Context.get() looks names up under MAIN first for that reason. Locals that
+// shadow those names are renamed along with them, which changes nothing, so
+// tokens are all this needs. After that the modules are just statements
+// defining differently named globals, and load() returns them as one program,
+// each module before the ones that import it, which every engine runs like any
+// other.
+//
+// The import graph is found up front, a layer at a time; each layer's files
+// are read and scanned in parallel, and then every new module is parsed and
+// resolved in parallel too, on the common fork-join pool. A module is loaded
+// once per process and kept for every later program that imports it.
+final class Modules {
+
+	// every module loaded without errors so far, by absolute path
+	private static final Map<Path, Module> loaded = new HashMap<>();
+
+	// qualifies the main source's top-level names; module qualifiers are quoted
+	// absolute paths
+	private static final String MAIN = "\"main\"";
+
+	private Modules() {
+	}
+
+	private static final class Module {
+		final Path path; // null for a program's main source
+		final String name;
+		final String qualifier;
+		boolean unreadable;
+		List<Token> tokens;
+		final List<Import> imports = new ArrayList<>();
+		// the qualified symbol of each top-level declaration, by plain symbol;
+		// these are the exports
+		final Map<Integer, Integer> exports = new HashMap<>();
+		List<Stmt> statements;
+		final List<String> errors = new ArrayList<>();
+
+		Module(Path path) {
+			this.path = path;
+			this.name = path == null ? null : Paths.get("").toAbsolutePath().relativize(path).toString();
+			this.qualifier = path == null ? MAIN : "\"" + path + "\"";
+		}
+	}
+
+	// what earlier programs run in the same globals loaded: every module that
+	// ran, and the names their main sources declared or imported, which the
+	// REPL's later lines still see
+	static final class Session {
+		private final Set<Path> ran = new HashSet<>();
+		private final Map<Integer, Integer> visible = new HashMap<>();
+
+		Set<Path> ran() {
+			return Collections.unmodifiableSet(ran);
+		}
+	}
+
+	private static final class Import {
+		final Token keyword;
+		final Path path;
+		Module module;
+
+		Import(Token keyword, Path path) {
+			this.keyword = keyword;
+			this.path = path;
+		}
+	}
+
+	// the whole program for `source`, whose imports are relative to `directory`:
+	// the statements of every module it imports that hasn't run in `session`
+	// already, then its own. Returns null after reporting errors
+	static synchronized List<Stmt> load(String source, Path directory, Session session) {
+		Module main = new Module(null);
+		Lox.collectErrors(main.errors, () -> {
+			main.tokens = new Scanner(source).scanTokens();
+			return null;
+		});
+		survey(main, directory);
+
+		// find the modules this program needs that aren't loaded yet
+		Map<Path, Module> found = new LinkedHashMap<>();
+		List<Module> layer = List.of(main);
+		while (!layer.isEmpty()) {
+			List<Module> next = new ArrayList<>();
+			for (Module module : layer) {
+				for (Import anImport : module.imports) {
+					anImport.module = loaded.get(anImport.path);
+					if (anImport.module == null) {
+						anImport.module = found.get(anImport.path);
+					}
+					if (anImport.module == null) {
+						anImport.module = new Module(anImport.path);
+						found.put(anImport.path, anImport.module);
+						next.add(anImport.module);
+					}
+				}
+			}
+
+			inParallel(next, Modules::read);
+			layer = next;
+		}
+
+		List<Module> compiled = new ArrayList<>(found.values());
+		compiled.add(main);
+		inParallel(compiled, module -> compile(module, module == main ? session.visible : Map.of()));
+
+		for (Module module : compiled) {
+			for (String error : module.errors) {
+				Lox.report(module.name == null ? error : module.name + ": " + error);
+			}
+		}
+
+		List<Stmt> program = new ArrayList<>();
+		Set<Module> linked = new HashSet<>();
+		boolean linkedAll = link(main, new HashSet<>(), linked, session.ran, program);
+		for (Module module : compiled) {
+			if (!module.errors.isEmpty()) {
+				return null;
+			}
+		}
+		if (!linkedAll) {
+			return null;
+		}
+
+		loaded.putAll(found);
+		for (Module module : linked) {
+			if (module != main) {
+				session.ran.add(module.path);
+			}
+		}
+		for (Import anImport : main.imports) {
+			session.visible.putAll(anImport.module.exports);
+		}
+		session.visible.putAll(main.exports);
+		program.addAll(main.statements);
+		return program;
+	}
+
+	private static void inParallel(List<Module> modules, Consumer<Module> step) {
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		for (Module module : modules) {
+			tasks.add(ForkJoinTask.adapt(() -> step.accept(module)));
+		}
+		ForkJoinTask.invokeAll(tasks);
+	}
+
+	private static void read(Module module) {
+		String source;
+		try {
+			source = new String(Files.readAllBytes(module.path), Charset.defaultCharset());
+		} catch (IOException error) {
+			module.unreadable = true;
+			return;
+		}
+
+		Lox.collectErrors(module.errors, () -> {
+			module.tokens = new Scanner(source, module.name).scanTokens();
+			return null;
+		});
+		survey(module, module.path.getParent());
+	}
+
+	// finds the imports and the top-level declarations of a scanned module, which
+	// are those outside of any braces or parentheses
+	private static void survey(Module module, Path directory) {
+		List<Token> tokens = module.tokens;
+		int depth = 0;
+		for (int i = 0; i < tokens.size() - 1; i++) {
+			Token token = tokens.get(i);
+			Token next = tokens.get(i + 1);
+			switch (token.type) {
+				case LEFT_BRACE:
+				case LEFT_PAREN:
+					depth++;
+					break;
+				case RIGHT_BRACE:
+				case RIGHT_PAREN:
+					depth--;
+					break;
+				case IMPORT:
+					if (depth == 0 && next.type == TokenType.STRING) {
+						Path path = directory.resolve((String) next.literal).toAbsolutePath().normalize();
+						module.imports.add(new Import(token, path));
+					}
+					break;
+				case VAR:
+				case FUN:
+					if (depth == 0 && next.type == TokenType.IDENTIFIER) {
+						module.exports.computeIfAbsent(next.symbol,
+								symbol -> Symbols.intern(module.qualifier + Symbols.name(symbol)));
+					}
+					break;
+			}
+		}
+	}
+
+	// renames, parses and resolves a module that could be read; `visible` are
+	// the names it sees from earlier programs, by plain symbol
+	private static void compile(Module module, Map<Integer, Integer> visible) {
+		if (module.unreadable) {
+			return;
+		}
+
+		Lox.collectErrors(module.errors, () -> {
+			if (!module.errors.isEmpty()) {
+				return null; // don't pile parse errors on top of scan errors
+			}
+
+			List<Stmt> statements = new Parser(renamed(module, visible)).parse();
+			if (module.errors.isEmpty()) {
+				new Resolver().resolve(statements);
+			}
+			module.statements = statements;
+			return null;
+		});
+	}
+
+	private static List<Token> renamed(Module module, Map<Integer, Integer> visible) {
+		Map<Integer, Integer> renames = new HashMap<>(visible);
+		for (Import anImport : module.imports) {
+			renames.putAll(anImport.module.exports);
+		}
+		renames.putAll(module.exports);
+		if (renames.isEmpty()) {
+			return module.tokens;
+		}
+
+		List<Token> tokens = new ArrayList<>(module.tokens.size());
+		for (Token token : module.tokens) {
+			Integer symbol = token.type == TokenType.IDENTIFIER ? renames.get(token.symbol) : null;
+			tokens.add(symbol == null ? token : new Token(token.type, token.lexeme, token.literal, token.line, symbol, token.module));
+		}
+		return tokens;
+	}
+
+	// the name a main source's top-level `name` is defined under; can't clash
+	// with an identifier, which has no quotes
+	static String main(String name) {
+		return MAIN + name;
+	}
+
+	// adds the statements of the modules `module` imports to `program`, in the
+	// order they run; false after reporting an import it can't satisfy
+	private static boolean link(Module module, Set<Module> linking, Set<Module> linked, Set<Path> ran, List<Stmt> program) {
+		boolean linkedAll = true;
+		linking.add(module);
+		for (Import anImport : module.imports) {
+			Module imported = anImport.module;
+			if (imported.unreadable) {
+				report(module, anImport.keyword, "Can't read module '" + imported.name + "'.");
+				linkedAll = false;
+			} else if (linking.contains(imported)) {
+				report(module, anImport.keyword, "Import cycle through '" + imported.name + "'.");
+				linkedAll = false;
+			} else if (!linked.contains(imported)) {
+				linkedAll &= link(imported, linking, linked, ran, program);
+				if (!ran.contains(imported.path) && imported.statements != null) {
+					program.addAll(imported.statements);
+				}
+			}
+		}
+		linking.remove(module);
+		linked.add(module);
+		return linkedAll;
+	}
+
+	private static void report(Module module, Token token, String message) {
+		if (module.path == null) {
+			Lox.error(token, message);
+			return;
+		}
+
+		List<String> errors = new ArrayList<>();
+		Lox.collectErrors(errors, () -> {
+			Lox.error(token, message);
+			return null;
+		});
+		Lox.report(module.name + ": " + errors.get(0));
+	}
+}
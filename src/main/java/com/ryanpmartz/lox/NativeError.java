@@ -0,0 +1,10 @@
+package com.ryanpmartz.lox;
+
+// a runtime error raised inside a NativeFunction, which doesn't know where it
+// was called from; the call site rethrows it as a LoxRuntimeError
+class NativeError extends RuntimeException {
+
+	NativeError(String message) {
+		super(message, null, false, false);
+	}
+}
@@ -0,0 +1,42 @@
+package com.ryanpmartz.lox;
+
+// a built-in function implemented in Java, taking at most four arguments.
+// Subclasses override the callN of their arity; call() only serves callers
+// that pass an array. A native reports a runtime error by throwing NativeError,
+// which the call site turns into a LoxRuntimeError at its own line.
+abstract class NativeFunction implements LoxCallable {
+
+	private final int arity;
+
+	NativeFunction(int arity) {
+		this.arity = arity;
+	}
+
+	@Override
+	public int arity() {
+		return arity;
+	}
+
+	@Override
+	public Object call(Interpreter interpreter, Object[] arguments) {
+		switch (arguments.length) {
+			case 0:
+				return call0(interpreter);
+			case 1:
+				return call1(interpreter, arguments[0]);
+			case 2:
+				return call2(interpreter, arguments[0], arguments[1]);
+			case 3:
+				return call3(interpreter, arguments[0], arguments[1], arguments[2]);
+			case 4:
+				return call4(interpreter, arguments[0], arguments[1], arguments[2], arguments[3]);
+			default:
+				throw new IllegalStateException("Natives take at most four arguments.");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "<native fn>";
+	}
+}
@@ -0,0 +1,266 @@
+package com.ryanpmartz.lox;
+
+// the built-in functions every Interpreter starts with. They keep no state of
+// their own, so they're made once, when this class is initialized, and every
+// Interpreter's globals get the same ones.
+final class Natives {
+
+	private static final Globals BUILT_INS = builtIns();
+
+	private Natives() {
+	}
+
+	static void define(Globals globals) {
+		globals.defineAll(BUILT_INS);
+	}
+
+	private static Globals builtIns() {
+		Globals globals = new Globals();
+		globals.define("clock", new NativeFunction(0) {
+			@Override
+			public Object call0(Interpreter interpreter) {
+				return (double) System.currentTimeMillis() / 1000.0;
+			}
+		});
+
+		// lists, see LoxList
+		globals.define("list", new NativeFunction(2) {
+			@Override
+			public Object call2(Interpreter interpreter, Object length, Object value) {
+				int size = checkLength(length);
+				LoxList list = new LoxList(size);
+				for (int i = 0; i < size; i++) {
+					list.add(value);
+				}
+				return list;
+			}
+		});
+		globals.define("len", new NativeFunction(1) {
+			@Override
+			public Object call1(Interpreter interpreter, Object value) {
+				if (Interpreter.isString(value)) {
+					return (double) ((CharSequence) value).length();
+				}
+				if (value instanceof LoxMap) {
+					return (double) ((LoxMap) value).size();
+				}
+				if (value instanceof DoubleArray) {
+					return (double) ((DoubleArray) value).length();
+				}
+				return (double) checkList(value).size();
+			}
+		});
+		globals.define("push", new NativeFunction(2) {
+			@Override
+			public Object call2(Interpreter interpreter, Object list, Object value) {
+				checkList(list).add(value);
+				return null;
+			}
+		});
+		globals.define("pop", new NativeFunction(1) {
+			@Override
+			public Object call1(Interpreter interpreter, Object list) {
+				return checkList(list).removeLast();
+			}
+		});
+		globals.define("sort", new NativeFunction(1) {
+			@Override
+			public Object call1(Interpreter interpreter, Object list) {
+				checkList(list).sort();
+				return null;
+			}
+		});
+
+		// maps, see LoxMap; `map[key]` reads and writes entries too
+		globals.define("map", new NativeFunction(0) {
+			@Override
+			public Object call0(Interpreter interpreter) {
+				return new LoxMap();
+			}
+		});
+		globals.define("get", new NativeFunction(2) {
+			@Override
+			public Object call2(Interpreter interpreter, Object map, Object key) {
+				return checkMap(map).get(key);
+			}
+		});
+		globals.define("put", new NativeFunction(3) {
+			@Override
+			public Object call3(Interpreter interpreter, Object map, Object key, Object value) {
+				checkMap(map).put(key, value);
+				return null;
+			}
+		});
+		globals.define("has", new NativeFunction(2) {
+			@Override
+			public Object call2(Interpreter interpreter, Object map, Object key) {
+				return checkMap(map).has(key);
+			}
+		});
+		globals.define("remove", new NativeFunction(2) {
+			@Override
+			public Object call2(Interpreter interpreter, Object map, Object key) {
+				return checkMap(map).remove(key);
+			}
+		});
+		globals.define("keys", new NativeFunction(1) {
+			@Override
+			public Object call1(Interpreter interpreter, Object map) {
+				return checkMap(map).keys();
+			}
+		});
+		globals.define("values", new NativeFunction(1) {
+			@Override
+			public Object call1(Interpreter interpreter, Object map) {
+				return checkMap(map).values();
+			}
+		});
+
+		// bulk math on double arrays, see DoubleArray
+		globals.define("doubles", new NativeFunction(1) {
+			@Override
+			public Object call1(Interpreter interpreter, Object source) {
+				if (!(source instanceof LoxList)) {
+					return new DoubleArray(new double[checkLength(source)]);
+				}
+
+				LoxList list = (LoxList) source;
+				double[] values = new double[list.size()];
+				for (int i = 0; i < values.length; i++) {
+					Object element = list.get(i);
+					if (!(element instanceof Double)) {
+						throw new NativeError("Can only store numbers in a double array.");
+					}
+					values[i] = (double) element;
+				}
+				return new DoubleArray(values);
+			}
+		});
+		globals.define("addArrays", new NativeFunction(2) {
+			@Override
+			public Object call2(Interpreter interpreter, Object a, Object b) {
+				return DoubleArray.add(checkDoubles(a), checkDoubles(b));
+			}
+		});
+		globals.define("mulArrays", new NativeFunction(2) {
+			@Override
+			public Object call2(Interpreter interpreter, Object a, Object b) {
+				return DoubleArray.multiply(checkDoubles(a), checkDoubles(b));
+			}
+		});
+		globals.define("scale", new NativeFunction(2) {
+			@Override
+			public Object call2(Interpreter interpreter, Object a, Object factor) {
+				if (!(factor instanceof Double)) {
+					throw new NativeError("Scale factor must be a number.");
+				}
+				return DoubleArray.scale(checkDoubles(a), (double) factor);
+			}
+		});
+		globals.define("dot", new NativeFunction(2) {
+			@Override
+			public Object call2(Interpreter interpreter, Object a, Object b) {
+				return DoubleArray.dot(checkDoubles(a), checkDoubles(b));
+			}
+		});
+		globals.define("sum", new NativeFunction(1) {
+			@Override
+			public Object call1(Interpreter interpreter, Object a) {
+				return DoubleArray.sum(checkDoubles(a));
+			}
+		});
+		globals.define("min", new NativeFunction(1) {
+			@Override
+			public Object call1(Interpreter interpreter, Object a) {
+				return DoubleArray.min(checkDoubles(a));
+			}
+		});
+		globals.define("max", new NativeFunction(1) {
+			@Override
+			public Object call1(Interpreter interpreter, Object a) {
+				return DoubleArray.max(checkDoubles(a));
+			}
+		});
+
+		// concurrency, see Task and Channel
+		globals.define("spawn", new NativeFunction(1) {
+			@Override
+			public Object call1(Interpreter interpreter, Object function) {
+				// a VM closure's open upvalues are slots on its VM's stack, which
+				// another thread's VM couldn't see
+				if (function instanceof VmClosure) {
+					throw new NativeError("spawn isn't supported by the bytecode VM.");
+				}
+				if (!(function instanceof LoxCallable) || ((LoxCallable) function).arity() != 0) {
+					throw new NativeError("Can only spawn functions that take no arguments.");
+				}
+				return Task.spawn(interpreter, (LoxCallable) function);
+			}
+		});
+		globals.define("join", new NativeFunction(1) {
+			@Override
+			public Object call1(Interpreter interpreter, Object task) {
+				if (!(task instanceof Task)) {
+					throw new NativeError("Can only join tasks.");
+				}
+				return ((Task) task).join();
+			}
+		});
+		globals.define("channel", new NativeFunction(0) {
+			@Override
+			public Object call0(Interpreter interpreter) {
+				return new Channel();
+			}
+		});
+		globals.define("send", new NativeFunction(2) {
+			@Override
+			public Object call2(Interpreter interpreter, Object channel, Object value) {
+				checkChannel(channel).send(value);
+				return null;
+			}
+		});
+		globals.define("receive", new NativeFunction(1) {
+			@Override
+			public Object call1(Interpreter interpreter, Object channel) {
+				return checkChannel(channel).receive();
+			}
+		});
+		return globals;
+	}
+
+	private static int checkLength(Object length) {
+		if (!(length instanceof Double) || (double) length < 0 || (double) length != Math.floor((double) length)
+				|| (double) length > Integer.MAX_VALUE - 8) {
+			throw new NativeError("Length must be a whole number.");
+		}
+		return (int) (double) length;
+	}
+
+	private static DoubleArray checkDoubles(Object value) {
+		if (!(value instanceof DoubleArray)) {
+			throw new NativeError("Expected a double array.");
+		}
+		return (DoubleArray) value;
+	}
+
+	private static LoxList checkList(Object value) {
+		if (!(value instanceof LoxList)) {
+			throw new NativeError("Expected a list.");
+		}
+		return (LoxList) value;
+	}
+
+	private static LoxMap checkMap(Object value) {
+		if (!(value instanceof LoxMap)) {
+			throw new NativeError("Expected a map.");
+		}
+		return (LoxMap) value;
+	}
+
+	private static Channel checkChannel(Object value) {
+		if (!(value instanceof Channel)) {
+			throw new NativeError("Expected a channel.");
+		}
+		return (Channel) value;
+	}
+}
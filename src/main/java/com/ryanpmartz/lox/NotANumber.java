@@ -0,0 +1,13 @@
+package com.ryanpmartz.lox;
+
+// thrown by Interpreter.evaluateDouble when an operand turns out not to be a
+// number; carries the already evaluated value so nothing is evaluated twice
+class NotANumber extends RuntimeException {
+
+	final Object value;
+
+	NotANumber(Object value) {
+		super(null, null, false, false);
+		this.value = value;
+	}
+}
@@ -0,0 +1,46 @@
+package com.ryanpmartz.lox;
+
+// instruction set of the bytecode VM; plain byte constants so the dispatch
+// loop compiles to a tableswitch instead of going through Enum.ordinal()
+final class OpCode {
+
+	static final byte CONSTANT = 0;       // u16 constant index
+	static final byte NIL = 1;
+	static final byte TRUE = 2;
+	static final byte FALSE = 3;
+	static final byte POP = 4;
+	static final byte GET_LOCAL = 5;      // u8 slot
+	static final byte SET_LOCAL = 6;      // u8 slot
+	static final byte GET_GLOBAL = 7;     // u16 constant index of the name token
+	static final byte DEFINE_GLOBAL = 8;  // u16 constant index of the name token
+	static final byte SET_GLOBAL = 9;     // u16 constant index of the name token
+	static final byte GET_UPVALUE = 10;   // u8 upvalue index
+	static final byte SET_UPVALUE = 11;   // u8 upvalue index
+	static final byte EQUAL = 12;
+	static final byte GREATER = 13;
+	static final byte GREATER_EQUAL = 14;
+	static final byte LESS = 15;
+	static final byte LESS_EQUAL = 16;
+	static final byte ADD = 17;
+	static final byte SUBTRACT = 18;
+	static final byte MULTIPLY = 19;
+	static final byte DIVIDE = 20;
+	static final byte NOT = 21;
+	static final byte NEGATE = 22;
+	static final byte PRINT = 23;
+	static final byte JUMP = 24;          // u16 forward offset
+	static final byte JUMP_IF_FALSE = 25; // u16 forward offset, leaves condition on the stack
+	static final byte LOOP = 26;          // u16 backward offset
+	static final byte CALL = 27;          // u8 argument count
+	static final byte CLOSURE = 28;       // u16 function constant, then (isLocal, index) per upvalue
+	static final byte CLOSE_UPVALUE = 29;
+	static final byte RETURN = 30;
+	static final byte POP_JUMP_IF_FALSE = 31; // u16 forward offset, always pops the condition
+	static final byte LIST = 32;          // u8 element count
+	static final byte GET_INDEX = 33;
+	static final byte SET_INDEX = 34;     // leaves the value on the stack
+	static final byte TAIL_CALL = 35;     // u8 argument count, always followed by RETURN
+
+	private OpCode() {
+	}
+}
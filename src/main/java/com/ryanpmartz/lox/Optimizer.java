@@ -0,0 +1,282 @@
+package com.ryanpmartz.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// rewrites a resolved syntax tree before it runs: folds operators whose operands
+// are literals, replaces reads of local variables that are initialized with a
+// literal and never reassigned, and drops `if`/`while` branches that can never
+// run. Only folds what evaluates without error, so anything that would fail at
+// run time still fails there, with the same token and line.
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+	// literal values of never-reassigned locals, by declaration
+	private final Map<Stmt.Var, Object> constants = new HashMap<>();
+
+	List<Stmt> optimize(List<Stmt> statements) {
+		List<Stmt> optimized = new ArrayList<>();
+		for (Stmt statement : statements) {
+			Stmt result = optimize(statement);
+			if (result != null) {
+				optimized.add(result);
+			}
+		}
+
+		return optimized;
+	}
+
+	// null when the statement can be dropped
+	private Stmt optimize(Stmt stmt) {
+		return stmt.accept(this);
+	}
+
+	private Expr optimize(Expr expr) {
+		return expr.accept(this);
+	}
+
+	// a statement in a position that can't be empty, like a loop body
+	private Stmt optimizeBranch(Stmt stmt) {
+		Stmt result = optimize(stmt);
+		return result != null ? result : emptyBlock();
+	}
+
+	private static Stmt emptyBlock() {
+		return new Stmt.Block(new ArrayList<>());
+	}
+
+	@Override
+	public Stmt visitBlockStmt(Stmt.Block stmt) {
+		Stmt.Block block = new Stmt.Block(optimize(stmt.statements));
+		block.stackSize = stmt.stackSize;
+		return block;
+	}
+
+	@Override
+	public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+		Expr expression = optimize(stmt.expression);
+		if (expression instanceof Expr.Literal) {
+			return null; // nothing to evaluate
+		}
+		return expression == stmt.expression ? stmt : new Stmt.Expression(expression);
+	}
+
+	@Override
+	public Stmt visitFunctionStmt(Stmt.Function stmt) {
+		Stmt.Function function = new Stmt.Function(stmt.name, stmt.params, optimize(stmt.body));
+		function.storage = stmt.storage;
+		function.slot = stmt.slot;
+		function.stackSize = stmt.stackSize;
+		function.capturedParams = stmt.capturedParams;
+		function.captures = stmt.captures;
+		return function;
+	}
+
+	@Override
+	public Stmt visitImportStmt(Stmt.Import stmt) {
+		return null;
+	}
+
+	@Override
+	public Stmt visitIfStmt(Stmt.If stmt) {
+		Expr condition = optimize(stmt.condition);
+		if (condition instanceof Expr.Literal) {
+			// local declarations only appear directly inside blocks, so dropping
+			// a branch never changes the slots of the enclosing frame
+			if (Interpreter.isTruthy(((Expr.Literal) condition).value)) {
+				return optimize(stmt.thenBranch);
+			}
+			return stmt.elseBranch != null ? optimize(stmt.elseBranch) : null;
+		}
+
+		Stmt elseBranch = stmt.elseBranch != null ? optimizeBranch(stmt.elseBranch) : null;
+		return new Stmt.If(condition, optimizeBranch(stmt.thenBranch), elseBranch);
+	}
+
+	@Override
+	public Stmt visitPrintStmt(Stmt.Print stmt) {
+		Expr expression = optimize(stmt.expression);
+		return expression == stmt.expression ? stmt : new Stmt.Print(expression);
+	}
+
+	@Override
+	public Stmt visitReturnStmt(Stmt.Return stmt) {
+		if (stmt.value == null) {
+			return stmt;
+		}
+
+		Expr value = optimize(stmt.value);
+		if (value == stmt.value) {
+			return stmt;
+		}
+		Stmt.Return result = new Stmt.Return(stmt.keyword, value);
+		result.tailCall = stmt.tailCall && value instanceof Expr.Call;
+		return result;
+	}
+
+	@Override
+	public Stmt visitVarStmt(Stmt.Var stmt) {
+		Expr initializer = stmt.initializer != null ? optimize(stmt.initializer) : new Expr.Literal(null);
+		if (!stmt.reassigned && initializer instanceof Expr.Literal) {
+			constants.put(stmt, ((Expr.Literal) initializer).value);
+		}
+
+		// the declaration itself stays, it still owns a slot in its frame
+		if (stmt.initializer == null || initializer == stmt.initializer) {
+			return stmt;
+		}
+		Stmt.Var var = new Stmt.Var(stmt.name, initializer);
+		var.storage = stmt.storage;
+		var.slot = stmt.slot;
+		var.reassigned = stmt.reassigned;
+		return var;
+	}
+
+	@Override
+	public Stmt visitWhileStmt(Stmt.While stmt) {
+		Expr condition = optimize(stmt.condition);
+		if (condition instanceof Expr.Literal && !Interpreter.isTruthy(((Expr.Literal) condition).value)) {
+			return null;
+		}
+
+		return new Stmt.While(condition, optimizeBranch(stmt.body));
+	}
+
+	@Override
+	public Expr visitAssignExpr(Expr.Assign expr) {
+		Expr value = optimize(expr.value);
+		if (value == expr.value) {
+			return expr;
+		}
+
+		Expr.Assign assign = new Expr.Assign(expr.name, value);
+		assign.storage = expr.storage;
+		assign.slot = expr.slot;
+		assign.cell = expr.cell;
+		return assign;
+	}
+
+	@Override
+	public Expr visitBinaryExpr(Expr.Binary expr) {
+		Expr left = optimize(expr.left);
+		Expr right = optimize(expr.right);
+
+		if (left instanceof Expr.Literal && right instanceof Expr.Literal) {
+			try {
+				return new Expr.Literal(Interpreter.binary(expr.operator,
+						((Expr.Literal) left).value, ((Expr.Literal) right).value));
+			} catch (LoxRuntimeError error) {
+				// leave it for the interpreter to report when it actually runs
+			}
+		}
+
+		if (left == expr.left && right == expr.right) {
+			return expr;
+		}
+		return new Expr.Binary(left, expr.operator, right);
+	}
+
+	@Override
+	public Expr visitCallExpr(Expr.Call expr) {
+		Expr callee = optimize(expr.callee);
+		List<Expr> arguments = new ArrayList<>();
+		boolean changed = callee != expr.callee;
+		for (Expr argument : expr.arguments) {
+			Expr optimized = optimize(argument);
+			changed |= optimized != argument;
+			arguments.add(optimized);
+		}
+
+		return changed ? new Expr.Call(callee, expr.paren, arguments) : expr;
+	}
+
+	@Override
+	public Expr visitGroupingExpr(Expr.Grouping expr) {
+		Expr expression = optimize(expr.expression);
+		if (expression instanceof Expr.Literal) {
+			return expression;
+		}
+		return expression == expr.expression ? expr : new Expr.Grouping(expression);
+	}
+
+	@Override
+	public Expr visitIndexExpr(Expr.Index expr) {
+		Expr object = optimize(expr.object);
+		Expr index = optimize(expr.index);
+		if (object == expr.object && index == expr.index) {
+			return expr;
+		}
+		return new Expr.Index(object, expr.bracket, index);
+	}
+
+	@Override
+	public Expr visitListLiteralExpr(Expr.ListLiteral expr) {
+		List<Expr> elements = new ArrayList<>();
+		boolean changed = false;
+		for (Expr element : expr.elements) {
+			Expr optimized = optimize(element);
+			changed |= optimized != element;
+			elements.add(optimized);
+		}
+
+		return changed ? new Expr.ListLiteral(elements) : expr;
+	}
+
+	@Override
+	public Expr visitLiteralExpr(Expr.Literal expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitLogicalExpr(Expr.Logical expr) {
+		Expr left = optimize(expr.left);
+		Expr right = optimize(expr.right);
+
+		// a literal left operand decides statically whether the right one is the result
+		if (left instanceof Expr.Literal) {
+			boolean truthy = Interpreter.isTruthy(((Expr.Literal) left).value);
+			boolean shortCircuits = expr.operator.type == TokenType.OR ? truthy : !truthy;
+			return shortCircuits ? left : right;
+		}
+
+		if (left == expr.left && right == expr.right) {
+			return expr;
+		}
+		return new Expr.Logical(left, expr.operator, right);
+	}
+
+	@Override
+	public Expr visitSetIndexExpr(Expr.SetIndex expr) {
+		Expr object = optimize(expr.object);
+		Expr index = optimize(expr.index);
+		Expr value = optimize(expr.value);
+		if (object == expr.object && index == expr.index && value == expr.value) {
+			return expr;
+		}
+		return new Expr.SetIndex(object, expr.bracket, index, value);
+	}
+
+	@Override
+	public Expr visitUnaryExpr(Expr.Unary expr) {
+		Expr right = optimize(expr.right);
+
+		if (right instanceof Expr.Literal) {
+			try {
+				return new Expr.Literal(Interpreter.unary(expr.operator, ((Expr.Literal) right).value));
+			} catch (LoxRuntimeError error) {
+				// leave it for the interpreter to report when it actually runs
+			}
+		}
+
+		return right == expr.right ? expr : new Expr.Unary(expr.operator, right);
+	}
+
+	@Override
+	public Expr visitVariableExpr(Expr.Variable expr) {
+		if (expr.declaration != null && constants.containsKey(expr.declaration)) {
+			return new Expr.Literal(constants.get(expr.declaration));
+		}
+		return expr;
+	}
+}
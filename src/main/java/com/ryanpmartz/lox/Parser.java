@@ -15,7 +15,9 @@ import static com.ryanpmartz.lox.TokenType.GREATER;
 import static com.ryanpmartz.lox.TokenType.GREATER_EQUAL;
 import static com.ryanpmartz.lox.TokenType.IDENTIFIER;
 import static com.ryanpmartz.lox.TokenType.IF;
+import static com.ryanpmartz.lox.TokenType.IMPORT;
 import static com.ryanpmartz.lox.TokenType.LEFT_BRACE;
+import static com.ryanpmartz.lox.TokenType.LEFT_BRACKET;
 import static com.ryanpmartz.lox.TokenType.LEFT_PAREN;
 import static com.ryanpmartz.lox.TokenType.LESS;
 import static com.ryanpmartz.lox.TokenType.LESS_EQUAL;
@@ -26,6 +28,7 @@ import static com.ryanpmartz.lox.TokenType.PLUS;
 import static com.ryanpmartz.lox.TokenType.PRINT;
 import static com.ryanpmartz.lox.TokenType.RETURN;
 import static com.ryanpmartz.lox.TokenType.RIGHT_BRACE;
+import static com.ryanpmartz.lox.TokenType.RIGHT_BRACKET;
 import static com.ryanpmartz.lox.TokenType.RIGHT_PAREN;
 import static com.ryanpmartz.lox.TokenType.SEMICOLON;
 import static com.ryanpmartz.lox.TokenType.SLASH;
@@ -55,12 +58,25 @@ public class Parser {
 	public List<Stmt> parse() {
 		List<Stmt> statements = new ArrayList<>();
 		while (!isAtEnd()) {
-			statements.add(declaration());
+			statements.add(check(IMPORT) ? importDeclaration() : declaration());
 		}
 
 		return statements;
 	}
 
+	// only at the top level, since Modules loads every import before the program runs
+	private Stmt importDeclaration() {
+		try {
+			Token keyword = advance();
+			Token path = consume(STRING, "Expect module path after 'import'.");
+			consume(SEMICOLON, "Expect ';' after module path.");
+			return new Stmt.Import(keyword, path);
+		} catch (ParseError error) {
+			synchronize();
+			return null;
+		}
+	}
+
 	private Stmt declaration() {
 		try {
 			if (match(FUN)) {
@@ -132,6 +148,11 @@ public class Parser {
 				return new Expr.Assign(name, value);
 			}
 
+			if (expr instanceof Expr.Index) {
+				Expr.Index target = (Expr.Index) expr;
+				return new Expr.SetIndex(target.object, target.bracket, target.index, value);
+			}
+
 			error(equals, "Invalid assignment target.");
 		}
 
@@ -163,6 +184,10 @@ public class Parser {
 	}
 
 	private Stmt statement() {
+		if (check(IMPORT)) {
+			throw error(peek(), "Can only import at the top level.");
+		}
+
 		if (match(FOR)) {
 			return forStatement();
 		}
@@ -365,6 +390,10 @@ public class Parser {
 		while (true) {
 			if (match(LEFT_PAREN)) {
 				expr = finishCall(expr);
+			} else if (match(LEFT_BRACKET)) {
+				Expr index = expression();
+				Token bracket = consume(RIGHT_BRACKET, "Expect ']' after index.");
+				expr = new Expr.Index(expr, bracket, index);
 			} else {
 				break;
 			}
@@ -411,6 +440,21 @@ public class Parser {
 			return new Expr.Variable(previous());
 		}
 
+		if (match(LEFT_BRACKET)) {
+			List<Expr> elements = new ArrayList<>();
+			if (!check(RIGHT_BRACKET)) {
+				do {
+					// like arguments, the elements of a literal are all on the stack at once
+					if (elements.size() >= 255) {
+						error(peek(), "Cannot have more than 255 list elements.");
+					}
+					elements.add(expression());
+				} while (match(COMMA));
+			}
+			consume(RIGHT_BRACKET, "Expect ']' after list elements.");
+			return new Expr.ListLiteral(elements);
+		}
+
 		if (match(LEFT_PAREN)) {
 			Expr expr = expression();
 
@@ -486,6 +530,7 @@ public class Parser {
 			switch (peek().type) {
 				case CLASS:
 				case FUN:
+				case IMPORT:
 				case VAR:
 				case FOR:
 				case IF:
@@ -0,0 +1,191 @@
+package com.ryanpmartz.lox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+// resolved programs on disk, so running a script that hasn't changed skips
+// scanning, parsing and resolving it and its imports. An entry is named after
+// a hash of the format version, the script's directory (its imports are
+// relative to that) and its source, and lists the modules it imported with
+// a hash of each; it only counts while every one of those still hashes the
+// same. The hashes only have to tell versions of a file apart, not resist
+// forgery, so they're a cheap 128-bit mix rather than a MessageDigest, whose
+// provider lookup alone costs a short script more than compiling it. The
+// program itself is written by AstWriter and read back by AstReader from a
+// memory-mapped file.
+//
+// Entries go in the directory named by the jlox.cache system property, or
+// jlox under $XDG_CACHE_HOME or ~/.cache. The cache is only ever an
+// optimization: anything going wrong with it just means compiling as usual.
+final class ProgramCache {
+
+	// bump whenever the AST, what the Resolver records in it, or this format changes
+	static final int VERSION = 4;
+	private static final int MAGIC = 0x4c4f5843; // "LOXC"
+
+	private ProgramCache() {
+	}
+
+	// the cached program for the script at `script` with `source`, or null
+	static List<Stmt> load(Path script, String source) {
+		byte[] key = key(script, source);
+		Path entry = entry(key);
+		if (entry == null || !Files.isRegularFile(entry)) {
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+			ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+				return null;
+			}
+
+			byte[] stored = new byte[key.length];
+			in.get(stored);
+			if (!Arrays.equals(stored, key)) {
+				return null;
+			}
+
+			AstReader reader = new AstReader(in);
+			int modules = reader.varint();
+			for (int i = 0; i < modules; i++) {
+				Path module = Paths.get(reader.string());
+				byte[] hash = new byte[key.length];
+				reader.bytes(hash);
+				if (!Arrays.equals(hash, hash(module))) {
+					return null;
+				}
+			}
+			return reader.statements();
+		} catch (IOException | RuntimeException error) {
+			return null;
+		}
+	}
+
+	// caches `program`, compiled from `source` and the `modules` it imported
+	static void store(Path script, String source, List<Stmt> program, Collection<Path> modules) {
+		byte[] key = key(script, source);
+		Path entry = entry(key);
+		if (entry == null) {
+			return;
+		}
+
+		AstWriter writer = new AstWriter();
+		writer.bytes(ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION).array());
+		writer.bytes(key);
+		writer.varint(modules.size());
+		for (Path module : modules) {
+			byte[] hash = hash(module);
+			if (hash == null) {
+				return; // changed or gone already, so the entry would never be used
+			}
+			writer.string(module.toString());
+			writer.bytes(hash);
+		}
+		writer.statements(program);
+
+		try {
+			// written whole and then moved into place, so no reader sees half an entry
+			Files.createDirectories(entry.getParent());
+			Path temporary = Files.createTempFile(entry.getParent(), "entry", ".tmp");
+			Files.write(temporary, writer.toByteArray());
+			Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | UnsupportedOperationException error) {
+			// not cached this time
+		}
+	}
+
+	private static byte[] key(Path script, String source) {
+		return new Hash()
+				.update(ByteBuffer.allocate(4).putInt(VERSION).array())
+				.update(script.toAbsolutePath().getParent().toString().getBytes(StandardCharsets.UTF_8))
+				.update(source.getBytes(StandardCharsets.UTF_8))
+				.digest();
+	}
+
+	// hash of a module's file, null if it can't be read
+	private static byte[] hash(Path module) {
+		try {
+			return new Hash().update(Files.readAllBytes(module)).digest();
+		} catch (IOException error) {
+			return null;
+		}
+	}
+
+	// two 64-bit multiply-rotate lanes over the input's 8-byte words, each
+	// update ending with its length so ("ab", "c") and ("a", "bc") differ
+	private static final class Hash {
+		private static final long K1 = 0x9E3779B97F4A7C15L;
+		private static final long K2 = 0xC2B2AE3D27D4EB4FL;
+
+		private long a = K1;
+		private long b = K2;
+
+		Hash update(byte[] bytes) {
+			ByteBuffer in = ByteBuffer.wrap(bytes);
+			while (in.remaining() >= 8) {
+				mix(in.getLong());
+			}
+			long tail = 0;
+			while (in.hasRemaining()) {
+				tail = (tail << 8) | (in.get() & 0xff);
+			}
+			mix(tail);
+			mix(bytes.length);
+			return this;
+		}
+
+		private void mix(long word) {
+			a = Long.rotateLeft(a ^ word, 31) * K1;
+			b = Long.rotateLeft(b + word, 27) * K2 + a;
+		}
+
+		byte[] digest() {
+			return ByteBuffer.allocate(16).putLong(finish(a ^ b)).putLong(finish(b)).array();
+		}
+
+		// MurmurHash3's 64-bit finalizer, so every input bit reaches every output bit
+		private static long finish(long h) {
+			h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+			h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+			return h ^ (h >>> 33);
+		}
+	}
+
+	private static Path entry(byte[] key) {
+		Path directory = directory();
+		if (directory == null) {
+			return null;
+		}
+
+		StringBuilder name = new StringBuilder();
+		for (byte b : key) {
+			name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return directory.resolve(name.append(".loxc").toString());
+	}
+
+	private static Path directory() {
+		String configured = System.getProperty("jlox.cache");
+		if (configured != null) {
+			return Paths.get(configured);
+		}
+
+		String cacheHome = System.getenv("XDG_CACHE_HOME");
+		if (cacheHome != null && !cacheHome.isEmpty()) {
+			return Paths.get(cacheHome, "jlox");
+		}
+		String home = System.getProperty("user.home");
+		return home == null ? null : Paths.get(home, ".cache", "jlox");
+	}
+}
@@ -0,0 +1,285 @@
+package com.ryanpmartz.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// finds functions whose result only depends on their arguments, so calls to
+// them can be answered from a Memo. A function is pure when its body
+//   - doesn't print,
+//   - assigns nothing but its own locals,
+//   - declares no functions,
+//   - reads no variables of enclosing functions, and only globals that are
+//     declared once in the program and never assigned, and
+//   - only calls such globals that are declared as pure functions.
+// Runs on a resolved program; the last condition is solved by assuming every
+// candidate pure and dropping the ones that call an impure function until
+// nothing changes, so recursion is fine.
+class Purity implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+	private final Map<Integer, Integer> globalDeclarations = new HashMap<>();
+	private final Map<Integer, Candidate> globalFunctions = new HashMap<>();
+	private final Set<Integer> assignedGlobals = new HashSet<>();
+	private final List<Candidate> candidates = new ArrayList<>();
+
+	// the function whose body is being walked, null outside of functions
+	private Candidate current = null;
+
+	// attaches a fresh Memo to every pure function in `statements` and returns them
+	static List<Stmt.Function> memoize(List<Stmt> statements) {
+		Purity purity = new Purity();
+		purity.walk(statements);
+
+		List<Stmt.Function> pure = new ArrayList<>();
+		for (Candidate candidate : purity.solve()) {
+			candidate.function.memo = new Memo();
+			pure.add(candidate.function);
+		}
+		return pure;
+	}
+
+	private static class Candidate {
+		final Stmt.Function function;
+		boolean impure = false;
+		final List<Token> globalReads = new ArrayList<>();
+		final List<Token> globalCalls = new ArrayList<>();
+
+		Candidate(Stmt.Function function) {
+			this.function = function;
+		}
+	}
+
+	private List<Candidate> solve() {
+		for (Candidate candidate : candidates) {
+			for (Token read : candidate.globalReads) {
+				candidate.impure |= !isStable(read);
+			}
+		}
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (Candidate candidate : candidates) {
+				if (candidate.impure) {
+					continue;
+				}
+				for (Token callee : candidate.globalCalls) {
+					Candidate target = globalFunctions.get(callee.symbol);
+					if (target == null || target.impure) {
+						candidate.impure = true;
+						changed = true;
+						break;
+					}
+				}
+			}
+		}
+
+		List<Candidate> pure = new ArrayList<>();
+		for (Candidate candidate : candidates) {
+			if (!candidate.impure) {
+				pure.add(candidate);
+			}
+		}
+		return pure;
+	}
+
+	// a global that holds the same value whenever it is defined
+	private boolean isStable(Token name) {
+		return globalDeclarations.getOrDefault(name.symbol, 0) == 1 && !assignedGlobals.contains(name.symbol);
+	}
+
+	private void walk(List<Stmt> statements) {
+		for (Stmt statement : statements) {
+			statement.accept(this);
+		}
+	}
+
+	private void walk(Expr expr) {
+		expr.accept(this);
+	}
+
+	private void impure() {
+		if (current != null) {
+			current.impure = true;
+		}
+	}
+
+	private void declareGlobal(Token name) {
+		globalDeclarations.merge(name.symbol, 1, Integer::sum);
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		walk(stmt.statements);
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		walk(stmt.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitFunctionStmt(Stmt.Function stmt) {
+		impure(); // a closure is a new value every call
+
+		Candidate enclosing = current;
+		current = new Candidate(stmt);
+		candidates.add(current);
+		if (stmt.storage == Resolver.GLOBAL) {
+			declareGlobal(stmt.name);
+			globalFunctions.put(stmt.name.symbol, current);
+		}
+		walk(stmt.body);
+		current = enclosing;
+		return null;
+	}
+
+	@Override
+	public Void visitImportStmt(Stmt.Import stmt) {
+		return null;
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		walk(stmt.condition);
+		stmt.thenBranch.accept(this);
+		if (stmt.elseBranch != null) {
+			stmt.elseBranch.accept(this);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Stmt.Print stmt) {
+		impure();
+		walk(stmt.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		if (stmt.value != null) {
+			walk(stmt.value);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		if (stmt.storage == Resolver.GLOBAL) {
+			declareGlobal(stmt.name);
+		}
+		if (stmt.initializer != null) {
+			walk(stmt.initializer);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		walk(stmt.condition);
+		stmt.body.accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign expr) {
+		if (expr.storage == Resolver.GLOBAL) {
+			assignedGlobals.add(expr.name.symbol);
+			impure();
+		} else if (expr.storage == Resolver.UPVALUE) {
+			impure();
+		}
+		walk(expr.value);
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary expr) {
+		walk(expr.left);
+		walk(expr.right);
+		return null;
+	}
+
+	@Override
+	public Void visitCallExpr(Expr.Call expr) {
+		if (expr.callee instanceof Expr.Variable && ((Expr.Variable) expr.callee).storage == Resolver.GLOBAL) {
+			if (current != null) {
+				current.globalCalls.add(((Expr.Variable) expr.callee).name);
+			}
+		} else {
+			impure(); // could be any function
+		}
+
+		walk(expr.callee);
+		for (Expr argument : expr.arguments) {
+			walk(argument);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping expr) {
+		walk(expr.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitIndexExpr(Expr.Index expr) {
+		impure(); // another call could have changed the list since
+		walk(expr.object);
+		walk(expr.index);
+		return null;
+	}
+
+	@Override
+	public Void visitListLiteralExpr(Expr.ListLiteral expr) {
+		impure(); // a new list every call
+		for (Expr element : expr.elements) {
+			walk(element);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal expr) {
+		return null;
+	}
+
+	@Override
+	public Void visitLogicalExpr(Expr.Logical expr) {
+		walk(expr.left);
+		walk(expr.right);
+		return null;
+	}
+
+	@Override
+	public Void visitSetIndexExpr(Expr.SetIndex expr) {
+		impure();
+		walk(expr.object);
+		walk(expr.index);
+		walk(expr.value);
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary expr) {
+		walk(expr.right);
+		return null;
+	}
+
+	@Override
+	public Void visitVariableExpr(Expr.Variable expr) {
+		if (expr.storage == Resolver.UPVALUE) {
+			impure();
+		} else if (expr.storage == Resolver.GLOBAL && current != null) {
+			current.globalReads.add(expr.name);
+		}
+		return null;
+	}
+}
@@ -1,31 +1,64 @@
 package com.ryanpmartz.lox;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 
+// Besides binding names, works out where each variable lives at run time, which
+// is what the `storage` and `slot` of declarations and uses say. Every local has
+// a slot in its function's frame on the Interpreter's stack. One that a nested
+// function refers to keeps a Cell there instead of the value (CELL), and each
+// function captures exactly the cells of its free variables when it is
+// declared; inside it they are UPVALUEs, numbered in the order they were first
+// used. Whether a local is captured is only known once its scope has been fully
+// resolved, so uses in the declaring function are bound in endScope.
+// Names are looked up by their symbol in `innermost`, which always holds the
+// local a name refers to at the current point; a declaration shadows the entry
+// until its scope ends.
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
-	private final Interpreter interpreter;
-	private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+	// a variable that was not found in any local scope
+	static final int GLOBAL = -1;
+	// a local in the current function's stack frame
+	static final int STACK = -2;
+	// a captured local; its stack slot holds the Cell
+	static final int CELL = -3;
+	// a free variable of the current function; `slot` indexes its upvalues
+	static final int UPVALUE = -4;
+
+	private final Stack<Scope> scopes = new Stack<>();
+	// by symbol; null when the name isn't declared in any enclosing scope
+	private Local[] innermost = new Local[Symbols.count()];
 	private FunctionType currentFunction = FunctionType.NONE;
-
-	public Resolver(Interpreter interpreter) {
-		this.interpreter = interpreter;
-	}
+	// top-level code gets a frame too, for the locals of its blocks
+	private FunctionState current = new FunctionState(null);
 
 	@Override
 	public Void visitBlockStmt(Stmt.Block stmt) {
+		// a block's slots are free again once it ends
+		int firstSlot = current.nextSlot;
+		int enclosingHighWater = current.highWater;
+		current.highWater = firstSlot;
+
 		beginScope();
 		resolve(stmt.statements);
 		endScope();
+		stmt.stackSize = current.highWater;
+
+		current.nextSlot = firstSlot;
+		current.highWater = Math.max(enclosingHighWater, current.highWater);
 		return null;
 	}
 
 	@Override
 	public Void visitVarStmt(Stmt.Var stmt) {
-		declare(stmt.name);
+		Local declared = declare(stmt.name);
+		if (declared != null) {
+			declared.declaration = stmt;
+		}
 		if (stmt.initializer != null) {
 			resolve(stmt.initializer);
 		}
@@ -37,26 +70,61 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitVariableExpr(Expr.Variable expr) {
-		boolean inOwnInitializer = !scopes.isEmpty() && scopes.peek().get(expr.name
-				.lexeme) == Boolean.FALSE;
+		Local local = innermost(expr.name);
+		boolean inOwnInitializer = local != null && local.scope == scopes.peek() && !local.defined;
 		if (inOwnInitializer) {
 			Lox.error(expr.name,
 					"Cannot read local variable in its own initializer.");
 		}
 
-		resolveLocal(expr, expr.name);
+		Local resolved = use(expr, expr.name);
+		if (resolved != null) {
+			expr.declaration = resolved.declaration;
+		}
+
 		return null;
 	}
 
-	private void resolveLocal(Expr expr, Token name) {
-		for (int i = scopes.size() - 1; i >= 0; i--) {
-			if (scopes.get(i).containsKey(name.lexeme)) {
-				interpreter.resolve(expr, scopes.size() - 1 - i);
-				return;
-			}
+	// binds a read or assignment of a local; null when the name isn't local, in
+	// which case it is global
+	private Local use(Expr expr, Token name) {
+		Local local = innermost(name);
+		if (local == null) {
+			// Not found. Assume it is global.
+			return null;
+		}
+
+		if (local.scope.function == current) {
+			local.uses.add(expr); // bound when its scope ends
+		} else {
+			bind(expr, UPVALUE, upvalue(current, local));
+		}
+		return local;
+	}
+
+	private Local innermost(Token name) {
+		return name.symbol < innermost.length ? innermost[name.symbol] : null;
+	}
+
+	// index of `local` among the upvalues of `function`, capturing it through every
+	// function in between if needed
+	private static int upvalue(FunctionState function, Local local) {
+		Integer index = function.upvalues.get(local);
+		if (index != null) {
+			return index;
+		}
+
+		int capture;
+		if (local.scope.function == function.enclosing) {
+			local.captured = true;
+			capture = local.slot;
+		} else {
+			capture = -1 - upvalue(function.enclosing, local);
 		}
 
-		// Not found. Assume it is global.
+		function.captures.add(capture);
+		function.upvalues.put(local, function.captures.size() - 1);
+		return function.captures.size() - 1;
 	}
 
 	@Override
@@ -65,6 +133,11 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		return null;
 	}
 
+	@Override
+	public Void visitImportStmt(Stmt.Import stmt) {
+		return null; // Modules renamed the imported names already
+	}
+
 	@Override
 	public Void visitIfStmt(Stmt.If stmt) {
 		resolve(stmt.condition);
@@ -94,6 +167,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 		if (stmt.value != null) {
 			resolve(stmt.value);
+			// nothing in the function runs after the call, so the caller's frame can go first
+			stmt.tailCall = stmt.value instanceof Expr.Call;
 		}
 
 		return null;
@@ -101,6 +176,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitBinaryExpr(Expr.Binary expr) {
+		resolve(expr.left);
+		resolve(expr.right);
 		return null;
 	}
 
@@ -121,6 +198,21 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		return null;
 	}
 
+	@Override
+	public Void visitIndexExpr(Expr.Index expr) {
+		resolve(expr.object);
+		resolve(expr.index);
+		return null;
+	}
+
+	@Override
+	public Void visitListLiteralExpr(Expr.ListLiteral expr) {
+		for (Expr element : expr.elements) {
+			resolve(element);
+		}
+		return null;
+	}
+
 	@Override
 	public Void visitLiteralExpr(Expr.Literal expr) {
 		return null;
@@ -133,6 +225,14 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		return null;
 	}
 
+	@Override
+	public Void visitSetIndexExpr(Expr.SetIndex expr) {
+		resolve(expr.object);
+		resolve(expr.index);
+		resolve(expr.value);
+		return null;
+	}
+
 	@Override
 	public Void visitUnaryExpr(Expr.Unary expr) {
 		resolve(expr.right);
@@ -150,13 +250,23 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitAssignExpr(Expr.Assign expr) {
 		resolve(expr.value);
-		resolveLocal(expr, expr.name);
+
+		Local resolved = use(expr, expr.name);
+		if (resolved != null) {
+			if (resolved.declaration != null) {
+				resolved.declaration.reassigned = true;
+			}
+		}
+
 		return null;
 	}
 
 	@Override
 	public Void visitFunctionStmt(Stmt.Function stmt) {
-		declare(stmt.name);
+		Local declared = declare(stmt.name);
+		if (declared != null) {
+			declared.function = stmt;
+		}
 		/*
 		Eagerly define function's name so that it can refer to itself in its own body
 		(e.g. recursion)
@@ -171,15 +281,39 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		// in Lox, functions can be nested arbitrarily deeply
 		FunctionType enclosingFunction = currentFunction;
 		currentFunction = type;
+		current = new FunctionState(current);
 
 		beginScope();
+		List<Local> params = new ArrayList<>();
 		for (Token param : function.params) {
-			declare(param);
+			params.add(declare(param)); // arguments are pushed into the first slots
 			define(param);
 		}
 		resolve(function.body);
 		endScope();
+		function.stackSize = current.highWater;
 
+		// captured parameters get moved into cells when the function is entered
+		int captured = 0;
+		for (Local param : params) {
+			if (param.captured) {
+				captured++;
+			}
+		}
+		function.capturedParams = new int[captured];
+		for (int i = 0, j = 0; i < params.size(); i++) {
+			if (params.get(i).captured) {
+				function.capturedParams[j++] = i;
+			}
+		}
+
+		List<Integer> captures = current.captures;
+		function.captures = new int[captures.size()];
+		for (int i = 0; i < captures.size(); i++) {
+			function.captures[i] = captures.get(i);
+		}
+
+		current = current.enclosing;
 		currentFunction = enclosingFunction;
 	}
 
@@ -198,33 +332,115 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	}
 
 	private void beginScope() {
-		scopes.push(new HashMap<>());
+		scopes.push(new Scope(current));
 	}
 
+	// every use of the scope's locals has been seen, so it's known which are captured
 	private void endScope() {
-		scopes.pop();
+		List<Local> locals = scopes.pop().locals;
+		for (int i = locals.size() - 1; i >= 0; i--) {
+			Local local = locals.get(i);
+			innermost[local.symbol] = local.shadowed; // latest declaration first
+
+			int storage = local.captured ? CELL : STACK;
+			if (local.declaration != null) {
+				local.declaration.storage = storage;
+				local.declaration.slot = local.slot;
+			} else if (local.function != null) {
+				local.function.storage = storage;
+				local.function.slot = local.slot;
+			}
+
+			for (Expr use : local.uses) {
+				bind(use, storage, local.slot);
+			}
+		}
+	}
+
+	private static void bind(Expr use, int storage, int slot) {
+		if (use instanceof Expr.Variable) {
+			((Expr.Variable) use).storage = storage;
+			((Expr.Variable) use).slot = slot;
+		} else {
+			((Expr.Assign) use).storage = storage;
+			((Expr.Assign) use).slot = slot;
+		}
 	}
 
-	private void declare(Token name) {
+	// null at the top level, where declarations are global
+	private Local declare(Token name) {
 		if (scopes.isEmpty()) {
-			return;
+			return null;
 		}
 
-		Map<String, Boolean> scope = scopes.peek();
+		Scope scope = scopes.peek();
 
 		// do not allow duplicate variables with same name to be declared within same scope
-		if (scope.containsKey(name.lexeme)) {
+		Local shadowed = innermost(name);
+		if (shadowed != null && shadowed.scope == scope) {
 			Lox.error(name,
 					"Variable with this name already declared in this scope.");
 		}
 
-		scope.put(name.lexeme, false); // false means is declared but not initialized
+		Local local = new Local(scope, name.symbol, current.nextSlot++); // declared but not initialized
+		current.highWater = Math.max(current.highWater, current.nextSlot);
+		if (name.symbol >= innermost.length) {
+			innermost = Arrays.copyOf(innermost, Math.max(Symbols.count(), name.symbol + 1));
+		}
+		local.shadowed = shadowed;
+		innermost[name.symbol] = local;
+		scope.locals.add(local);
+		return local;
 	}
 
 	private void define(Token name) {
 		if (scopes.isEmpty()) {
 			return;
 		}
-		scopes.peek().put(name.lexeme, true);
+		innermost[name.symbol].defined = true;
+	}
+
+	// a function being resolved
+	private static class FunctionState {
+		final FunctionState enclosing;
+		// stack slots; highWater is the frame size so far
+		int nextSlot = 0;
+		int highWater = 0;
+		// what each upvalue is captured from when the function is declared: a
+		// stack slot of the enclosing function, or -1 - i for its upvalue i
+		final List<Integer> captures = new ArrayList<>();
+		final Map<Local, Integer> upvalues = new HashMap<>();
+
+		FunctionState(FunctionState enclosing) {
+			this.enclosing = enclosing;
+		}
+	}
+
+	// a block or function body
+	private static class Scope {
+		final List<Local> locals = new ArrayList<>(); // in declaration order
+		final FunctionState function;
+
+		Scope(FunctionState function) {
+			this.function = function;
+		}
+	}
+
+	private static class Local {
+		final Scope scope;
+		final int symbol;
+		final int slot; // in the function's stack frame
+		boolean defined = false;
+		boolean captured = false; // used from a function nested in the declaring one
+		Stmt.Var declaration; // null for parameters and functions
+		Stmt.Function function; // set for function declarations
+		final List<Expr> uses = new ArrayList<>(); // in the declaring function
+		Local shadowed; // by this one until its scope ends
+
+		Local(Scope scope, int symbol, int slot) {
+			this.scope = scope;
+			this.symbol = symbol;
+			this.slot = slot;
+		}
 	}
 }
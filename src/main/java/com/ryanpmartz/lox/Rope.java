@@ -0,0 +1,117 @@
+package com.ryanpmartz.lox;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// a string value built by `+`. Lox strings are either a java.lang.String or a
+// Rope; concatenating long strings just links the two halves, so building a
+// string piece by piece is linear instead of copying the whole prefix every
+// time. A rope is flattened into a String the first time its characters are
+// needed (printing, equality) and keeps that String instead of its halves.
+final class Rope implements CharSequence {
+
+	// results shorter than this are copied right away, which is cheaper than
+	// linking and later walking a rope
+	static final int MIN_LENGTH = 256;
+
+	private final int length;
+	// the two halves, or the flattened String once it has been built; a single
+	// field so a rope shared between threads is always seen in one state or the other
+	private volatile Object contents;
+
+	private Rope(CharSequence left, CharSequence right, int length) {
+		this.contents = new CharSequence[] {left, right};
+		this.length = length;
+	}
+
+	// a Lox string with the characters of `left` followed by those of `right`
+	static CharSequence concat(CharSequence left, CharSequence right) {
+		if (left.length() == 0) {
+			return right;
+		}
+		if (right.length() == 0) {
+			return left;
+		}
+
+		long length = (long) left.length() + right.length();
+		if (length < MIN_LENGTH) {
+			return left.toString().concat(right.toString());
+		}
+		if (length > Integer.MAX_VALUE) {
+			throw new OutOfMemoryError("String too long.");
+		}
+		return new Rope(left, right, (int) length);
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		return toString().charAt(index);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return toString().subSequence(start, end);
+	}
+
+	@Override
+	public String toString() {
+		Object current = contents;
+		if (current instanceof String) {
+			return (String) current;
+		}
+
+		String flat = flatten((CharSequence[]) current);
+		contents = flat;
+		return flat;
+	}
+
+	// ropes built in a loop are as deep as the loop ran, so walk them without recursion
+	private String flatten(CharSequence[] halves) {
+		char[] chars = new char[length];
+		int end = length;
+
+		Deque<Object> pending = new ArrayDeque<>();
+		pending.push(halves[0]);
+		pending.push(halves[1]);
+		// fills the buffer from the back, so visit right halves first
+		while (!pending.isEmpty()) {
+			Object piece = pending.pop();
+			if (piece instanceof Rope) {
+				piece = ((Rope) piece).contents;
+			}
+
+			if (piece instanceof CharSequence[]) {
+				pending.push(((CharSequence[]) piece)[0]);
+				pending.push(((CharSequence[]) piece)[1]);
+			} else {
+				String text = (String) piece;
+				end -= text.length();
+				text.getChars(0, text.length(), chars, end);
+			}
+		}
+
+		return new String(chars);
+	}
+
+	// equal to another Lox string with the same characters, whichever representation
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof Rope) && !(other instanceof String)) {
+			return false;
+		}
+		return ((CharSequence) other).length() == length && toString().equals(other.toString());
+	}
+
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+}
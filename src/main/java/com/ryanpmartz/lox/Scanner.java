@@ -17,7 +17,9 @@ import static com.ryanpmartz.lox.TokenType.GREATER;
 import static com.ryanpmartz.lox.TokenType.GREATER_EQUAL;
 import static com.ryanpmartz.lox.TokenType.IDENTIFIER;
 import static com.ryanpmartz.lox.TokenType.IF;
+import static com.ryanpmartz.lox.TokenType.IMPORT;
 import static com.ryanpmartz.lox.TokenType.LEFT_BRACE;
+import static com.ryanpmartz.lox.TokenType.LEFT_BRACKET;
 import static com.ryanpmartz.lox.TokenType.LEFT_PAREN;
 import static com.ryanpmartz.lox.TokenType.LESS;
 import static com.ryanpmartz.lox.TokenType.LESS_EQUAL;
@@ -29,6 +31,7 @@ import static com.ryanpmartz.lox.TokenType.PLUS;
 import static com.ryanpmartz.lox.TokenType.PRINT;
 import static com.ryanpmartz.lox.TokenType.RETURN;
 import static com.ryanpmartz.lox.TokenType.RIGHT_BRACE;
+import static com.ryanpmartz.lox.TokenType.RIGHT_BRACKET;
 import static com.ryanpmartz.lox.TokenType.RIGHT_PAREN;
 import static com.ryanpmartz.lox.TokenType.SEMICOLON;
 import static com.ryanpmartz.lox.TokenType.SLASH;
@@ -41,35 +44,33 @@ import static com.ryanpmartz.lox.TokenType.VAR;
 import static com.ryanpmartz.lox.TokenType.WHILE;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
 
 public class Scanner {
 
-	private static final Map<String, TokenType> keywords;
+	// token type of each keyword, indexed by its symbol; null for other symbols
+	private static final TokenType[] keywords;
 
 	static {
-		keywords = new HashMap<>();
-		keywords.put("and", AND);
-		keywords.put("class", CLASS);
-		keywords.put("else", ELSE);
-		keywords.put("false", FALSE);
-		keywords.put("for", FOR);
-		keywords.put("fun", FUN);
-		keywords.put("if", IF);
-		keywords.put("nil", NIL);
-		keywords.put("or", OR);
-		keywords.put("print", PRINT);
-		keywords.put("return", RETURN);
-		keywords.put("super", SUPER);
-		keywords.put("this", THIS);
-		keywords.put("true", TRUE);
-		keywords.put("var", VAR);
-		keywords.put("while", WHILE);
+		TokenType[] types = {AND, CLASS, ELSE, FALSE, FOR, FUN, IF, IMPORT, NIL, OR, PRINT, RETURN, SUPER, THIS, TRUE, VAR, WHILE};
+		int[] symbols = new int[types.length];
+		int size = 0;
+		for (int i = 0; i < types.length; i++) {
+			// Locale.ROOT, or "if" is spelled with a dotless ı in a Turkish locale
+			symbols[i] = Symbols.intern(types[i].name().toLowerCase(Locale.ROOT));
+			size = Math.max(size, symbols[i] + 1);
+		}
+
+		keywords = new TokenType[size];
+		for (int i = 0; i < types.length; i++) {
+			keywords[symbols[i]] = types[i];
+		}
 	}
 
 	private final String source;
+	// see Token.module
+	private final String module;
 	private final List<Token> tokens = new ArrayList<>();
 
 	private int start = 0;
@@ -77,7 +78,12 @@ public class Scanner {
 	private int line = 1;
 
 	public Scanner(String source) {
+		this(source, null);
+	}
+
+	Scanner(String source, String module) {
 		this.source = source;
+		this.module = module;
 	}
 
 	protected List<Token> scanTokens() {
@@ -86,7 +92,7 @@ public class Scanner {
 			scanToken();
 		}
 
-		tokens.add(new Token(EOF, "", null, line));
+		tokens.add(new Token(EOF, "", null, line, Symbols.NONE, module));
 		return tokens;
 	}
 
@@ -110,6 +116,12 @@ public class Scanner {
 			case '}':
 				addToken(RIGHT_BRACE);
 				break;
+			case '[':
+				addToken(LEFT_BRACKET);
+				break;
+			case ']':
+				addToken(RIGHT_BRACKET);
+				break;
 			case ',':
 				addToken(COMMA);
 				break;
@@ -188,7 +200,8 @@ public class Scanner {
 
 	private void addToken(TokenType type, Object literal) {
 		String text = source.substring(start, current);
-		tokens.add(new Token(type, text, literal, line));
+		int symbol = type == IDENTIFIER ? Symbols.intern(text) : Symbols.NONE;
+		tokens.add(new Token(type, text, literal, line, symbol, module));
 	}
 
 	// conditionally advances if next character == expected
@@ -276,11 +289,11 @@ public class Scanner {
 			advance();
 		}
 
-		// see if token is a reserved word
-		String text = source.substring(start, current);
-
-		TokenType type = keywords.getOrDefault(text, IDENTIFIER);
-		addToken(type);
+		// see if token is a reserved word; interning finds the name without
+		// copying it out of the source when it has been seen before
+		int symbol = Symbols.intern(source, start, current);
+		TokenType type = symbol < keywords.length && keywords[symbol] != null ? keywords[symbol] : IDENTIFIER;
+		tokens.add(new Token(type, Symbols.name(symbol), null, line, symbol, module));
 	}
 
 	private boolean isAlpha(char c) {
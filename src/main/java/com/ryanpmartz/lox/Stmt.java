@@ -12,6 +12,8 @@ public abstract class Stmt {
 
         R visitIfStmt(If stmt);
 
+        R visitImportStmt(Import stmt);
+
         R visitPrintStmt(Print stmt);
 
         R visitReturnStmt(Return stmt);
@@ -31,6 +33,7 @@ public abstract class Stmt {
         }
 
         public final List<Stmt> statements;
+        int stackSize;
     }
 
     public static class Expression extends Stmt {
@@ -59,6 +62,15 @@ public abstract class Stmt {
         public final Token name;
         public final List<Token> params;
         public final List<Stmt> body;
+        int storage = Resolver.GLOBAL;
+        int slot;
+        int stackSize;
+        int[] capturedParams;
+        int[] captures;
+        int calls;
+        boolean compileAttempted;
+        volatile CompiledFunction compiled;
+        Memo memo;
     }
 
     public static class If extends Stmt {
@@ -77,6 +89,20 @@ public abstract class Stmt {
         public final Stmt elseBranch;
     }
 
+    public static class Import extends Stmt {
+        Import(Token keyword, Token path) {
+            this.keyword = keyword;
+            this.path = path;
+        }
+
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitImportStmt(this);
+        }
+
+        public final Token keyword;
+        public final Token path;
+    }
+
     public static class Print extends Stmt {
         Print(Expr expression) {
             this.expression = expression;
@@ -101,6 +127,7 @@ public abstract class Stmt {
 
         public final Token keyword;
         public final Expr value;
+        boolean tailCall;
     }
 
     public static class Var extends Stmt {
@@ -115,6 +142,9 @@ public abstract class Stmt {
 
         public final Token name;
         public final Expr initializer;
+        int storage = Resolver.GLOBAL;
+        int slot;
+        boolean reassigned;
     }
 
     public static class While extends Stmt {
@@ -129,6 +159,8 @@ public abstract class Stmt {
 
         public final Expr condition;
         public final Stmt body;
+        boolean analyzed;
+        CountedLoop counted;
     }
 
     abstract <R> R accept(Visitor<R> visitor);
@@ -0,0 +1,137 @@
+package com.ryanpmartz.lox;
+
+import java.util.Arrays;
+
+// interned identifier names. Every distinct name gets a dense int, its symbol,
+// the first time it is seen, and the same String from then on; the Scanner looks
+// names up straight from the source text, so an identifier that has been seen
+// before costs no allocation. Passes after the Scanner key on Token.symbol, and
+// since symbols are dense they can index arrays instead of hashing names.
+// Shared by every Interpreter, so symbols mean the same thing in all of them.
+//
+// Symbols live as long as the process: the table grows by one entry per
+// distinct name ever scanned (and per qualified name Modules makes for a
+// top-level declaration), never per program, so an Engine compiling the same
+// scripts over and over doesn't grow it. A process compiling an unbounded
+// stream of freshly named programs would, and should use separate processes.
+//
+// Looking up a name that is already interned takes no lock, so Scanners on
+// several threads only wait for each other when they meet new names. Only
+// intern() writes, under the class lock, and it publishes a new entry by
+// writing its name before the bucket pointing at it and then the volatile
+// `count`; a reader that finds a bucket it can't trust yet (pointing past the
+// count it has seen, or at a name not visible to it) retries under the lock.
+// Arrays are replaced rather than resized in place, and readers keep whichever
+// they started with, which at worst misses a newer entry and also retries.
+final class Symbols {
+
+	// the symbol of a token that isn't an identifier or keyword
+	static final int NONE = -1;
+
+	private static volatile String[] names = new String[256];
+	private static volatile int count = 0;
+	// open addressing over symbol + 1, 0 is an empty bucket
+	private static volatile int[] buckets = new int[512];
+
+	private Symbols() {
+	}
+
+	static int intern(String name) {
+		return intern(name, 0, name.length());
+	}
+
+	// symbol for the name source[start, end)
+	static int intern(String source, int start, int end) {
+		int hash = hash(source, start, end);
+		int symbol = find(source, start, end, hash);
+		return symbol != NONE ? symbol : add(source, start, end, hash);
+	}
+
+	static String name(int symbol) {
+		return names[symbol];
+	}
+
+	// one more than the largest symbol so far, for sizing tables indexed by symbol
+	static int count() {
+		return count;
+	}
+
+	// the symbol already interned for the name, or NONE when it isn't or this
+	// thread can't see it yet
+	private static int find(String source, int start, int end, int hash) {
+		int[] buckets = Symbols.buckets;
+		String[] names = Symbols.names;
+		int length = end - start;
+		int mask = buckets.length - 1;
+		for (int bucket = mix(hash) & mask; ; bucket = (bucket + 1) & mask) {
+			int entry = buckets[bucket];
+			if (entry == 0 || entry > count || entry > names.length) {
+				return NONE;
+			}
+
+			String name = names[entry - 1];
+			if (name == null) {
+				return NONE;
+			}
+			if (name.length() == length && source.regionMatches(start, name, 0, length)) {
+				return entry - 1;
+			}
+		}
+	}
+
+	private static synchronized int add(String source, int start, int end, int hash) {
+		int symbol = find(source, start, end, hash);
+		if (symbol != NONE) {
+			return symbol; // another thread added it, or this one couldn't see it
+		}
+
+		symbol = count;
+		String[] names = Symbols.names;
+		if (symbol == names.length) {
+			names = Arrays.copyOf(names, symbol * 2);
+		}
+		names[symbol] = source.substring(start, end);
+		Symbols.names = names;
+
+		int[] buckets = Symbols.buckets;
+		int mask = buckets.length - 1;
+		int bucket = mix(hash) & mask;
+		while (buckets[bucket] != 0) {
+			bucket = (bucket + 1) & mask;
+		}
+		buckets[bucket] = symbol + 1;
+		count = symbol + 1;
+
+		if (count * 2 > buckets.length) {
+			rehash();
+		}
+		return symbol;
+	}
+
+	private static void rehash() {
+		int[] buckets = new int[Symbols.buckets.length * 2];
+		int mask = buckets.length - 1;
+		for (int symbol = 0; symbol < count; symbol++) {
+			int bucket = mix(names[symbol].hashCode()) & mask;
+			while (buckets[bucket] != 0) {
+				bucket = (bucket + 1) & mask;
+			}
+			buckets[bucket] = symbol + 1;
+		}
+		Symbols.buckets = buckets;
+	}
+
+	// the same as String.hashCode() of the name
+	private static int hash(String source, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + source.charAt(i);
+		}
+		return hash;
+	}
+
+	// spreads the high bits of a String hash into the bucket index
+	private static int mix(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,14 @@
+package com.ryanpmartz.lox;
+
+// a pending call in tail position, returned from a function body in place of its
+// value; never visible to Lox code
+class TailCall {
+
+	final LoxFunction function;
+	final int arguments; // where they were pushed on the interpreter's stack
+
+	TailCall(LoxFunction function, int arguments) {
+		this.function = function;
+		this.arguments = arguments;
+	}
+}
@@ -0,0 +1,84 @@
+package com.ryanpmartz.lox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+// a function started by `spawn`, running on its own thread with its own
+// Interpreter (stack, frames) over the spawning one's globals. Closures are
+// shared, so a task sees the variables its function captured. `join` waits for
+// it and returns what the function returned, or rethrows its runtime error.
+//
+// Tasks run on virtual threads when the JVM has them (21+), so thousands of
+// tasks blocked on channels or joins cost little; otherwise on daemon platform
+// threads, which like virtual threads don't keep the program alive.
+final class Task {
+
+	private static final MethodHandle START_VIRTUAL_THREAD = startVirtualThread();
+
+	private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+	private Task() {
+	}
+
+	static Task spawn(Interpreter interpreter, LoxCallable function) {
+		Task task = new Task();
+		Interpreter forked = interpreter.fork();
+		start(() -> {
+			try {
+				task.result.complete(function.call0(forked));
+			} catch (Throwable failure) {
+				task.result.completeExceptionally(failure);
+			}
+		});
+		return task;
+	}
+
+	Object join() {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NativeError("Interrupted while joining a task.");
+		} catch (ExecutionException e) {
+			// the task's own error, so it points at the line that failed
+			Throwable failure = e.getCause();
+			if (failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			}
+			throw (Error) failure;
+		}
+	}
+
+	private static void start(Runnable body) {
+		if (START_VIRTUAL_THREAD != null) {
+			try {
+				START_VIRTUAL_THREAD.invoke(body);
+				return;
+			} catch (Throwable e) {
+				throw new IllegalStateException("Could not start a virtual thread", e);
+			}
+		}
+
+		Thread thread = new Thread(body, "lox-task");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// Thread.startVirtualThread(Runnable), looked up since the build targets an older JDK
+	private static MethodHandle startVirtualThread() {
+		try {
+			return MethodHandles.publicLookup().findStatic(Thread.class, "startVirtualThread",
+					MethodType.methodType(Thread.class, Runnable.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "<task>";
+	}
+}
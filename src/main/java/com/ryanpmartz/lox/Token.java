@@ -6,12 +6,27 @@ public class Token {
 	final String lexeme;
 	final Object literal;
 	final int line;
+	// interned name of an identifier or keyword, Symbols.NONE for other tokens
+	final int symbol;
+	// name of the imported file it was scanned from, null in a program's main
+	// source; runtime errors report it like Modules reports compile errors
+	final String module;
 
 	public Token(TokenType type, String lexeme, Object literal, int line) {
+		this(type, lexeme, literal, line, type == TokenType.IDENTIFIER ? Symbols.intern(lexeme) : Symbols.NONE);
+	}
+
+	Token(TokenType type, String lexeme, Object literal, int line, int symbol) {
+		this(type, lexeme, literal, line, symbol, null);
+	}
+
+	Token(TokenType type, String lexeme, Object literal, int line, int symbol, String module) {
 		this.type = type;
 		this.lexeme = lexeme;
 		this.literal = literal;
 		this.line = line;
+		this.symbol = symbol;
+		this.module = module;
 	}
 
 	public String toString() {
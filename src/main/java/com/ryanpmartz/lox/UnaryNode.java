@@ -0,0 +1,71 @@
+package com.ryanpmartz.lox;
+
+// operator implementation attached to an Expr.Unary site; same self-rewriting
+// scheme as BinaryNode
+abstract class UnaryNode {
+
+	abstract Object execute(Expr.Unary site, Object right);
+
+	static class Uninitialized extends UnaryNode {
+
+		private int executions = 0;
+		private boolean allDoubles = true;
+
+		@Override
+		Object execute(Expr.Unary site, Object right) {
+			allDoubles &= right instanceof Double;
+
+			if (++executions >= BinaryNode.WARMUP) {
+				site.node = specialize(site.operator, allDoubles);
+			}
+
+			return Interpreter.unary(site.operator, right);
+		}
+
+		private static UnaryNode specialize(Token operator, boolean doubles) {
+			if (operator.type == TokenType.BANG) {
+				return new Not();
+			}
+			if (operator.type == TokenType.MINUS && doubles) {
+				return new NegateDouble();
+			}
+
+			return GENERIC;
+		}
+	}
+
+	static final class Generic extends UnaryNode {
+
+		@Override
+		Object execute(Expr.Unary site, Object right) {
+			return Interpreter.unary(site.operator, right);
+		}
+	}
+
+	private static final UnaryNode GENERIC = new Generic();
+
+	static Object deoptimize(Expr.Unary site, Object right) {
+		site.node = GENERIC;
+		return Interpreter.unary(site.operator, right);
+	}
+
+	static final class NegateDouble extends UnaryNode {
+
+		@Override
+		Object execute(Expr.Unary site, Object right) {
+			if (right instanceof Double) {
+				return -(double) right;
+			}
+			return deoptimize(site, right);
+		}
+	}
+
+	// truthiness is defined for every value, so no guard
+	static final class Not extends UnaryNode {
+
+		@Override
+		Object execute(Expr.Unary site, Object right) {
+			return !Interpreter.isTruthy(right);
+		}
+	}
+}
@@ -0,0 +1,452 @@
+package com.ryanpmartz.lox;
+
+import java.util.Arrays;
+
+// stack-based bytecode interpreter; an alternative to walking the tree with Interpreter
+public class VM {
+
+	private static final int MAX_FRAMES = 1 << 16;
+	// stack space every frame may use for its locals and temporaries
+	private static final int FRAME_HEADROOM = 1024;
+
+	// natives and global variables are shared with the tree-walking Interpreter
+	private final Interpreter interpreter;
+	private final Globals globals;
+
+	private Object[] stack = new Object[FRAME_HEADROOM * 4];
+	private int sp = 0;
+
+	// call frames are kept in parallel arrays so calls do not allocate
+	private VmClosure[] frameClosures = new VmClosure[64];
+	private int[] frameIps = new int[64];
+	private int[] frameBases = new int[64];
+	private int frameCount = 0;
+
+	private VmClosure.Upvalue openUpvalues = null;
+
+	public VM(Interpreter interpreter) {
+		this.interpreter = interpreter;
+		this.globals = interpreter.globals;
+	}
+
+	public void interpret(VmFunction script) {
+		try {
+			VmClosure closure = new VmClosure(script);
+			stack[sp++] = closure;
+			pushFrame(closure, 0);
+			run();
+		} catch (LoxRuntimeError err) {
+			Lox.runtimeError(err);
+			sp = 0;
+			frameCount = 0;
+			openUpvalues = null;
+		}
+	}
+
+	private void run() {
+		// the current frame and stack pointer are cached in locals and written back around calls
+		VmClosure closure = frameClosures[frameCount - 1];
+		byte[] code = closure.function.chunk.code;
+		Object[] constants = closure.function.chunk.constants;
+		int base = frameBases[frameCount - 1];
+		int ip = frameIps[frameCount - 1];
+		Object[] stack = this.stack;
+		int sp = this.sp;
+
+		for (; ; ) {
+			byte instruction = code[ip++];
+			switch (instruction) {
+				case OpCode.CONSTANT: {
+					stack[sp++] = constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+					ip += 2;
+					break;
+				}
+				case OpCode.NIL:
+					stack[sp++] = null;
+					break;
+				case OpCode.TRUE:
+					stack[sp++] = Boolean.TRUE;
+					break;
+				case OpCode.FALSE:
+					stack[sp++] = Boolean.FALSE;
+					break;
+				case OpCode.POP:
+					sp--;
+					break;
+				case OpCode.GET_LOCAL:
+					stack[sp++] = stack[base + (code[ip++] & 0xff)];
+					break;
+				case OpCode.SET_LOCAL:
+					// assignment is an expression, so the value stays on the stack
+					stack[base + (code[ip++] & 0xff)] = stack[sp - 1];
+					break;
+				case OpCode.GET_GLOBAL: {
+					int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+					ip += 2;
+					Globals.Cell cell = globalCell(closure.function.chunk, index);
+					stack[sp++] = cell.defined ? cell.value : Globals.get(cell, (Token) constants[index]);
+					break;
+				}
+				case OpCode.DEFINE_GLOBAL: {
+					Token name = (Token) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+					ip += 2;
+					globals.define(name, stack[--sp]);
+					break;
+				}
+				case OpCode.SET_GLOBAL: {
+					int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+					ip += 2;
+					Globals.assign(globalCell(closure.function.chunk, index), (Token) constants[index], stack[sp - 1]);
+					break;
+				}
+				case OpCode.GET_UPVALUE: {
+					VmClosure.Upvalue upvalue = closure.upvalues[code[ip++] & 0xff];
+					stack[sp++] = upvalue.open ? stack[upvalue.slot] : upvalue.closed;
+					break;
+				}
+				case OpCode.SET_UPVALUE: {
+					VmClosure.Upvalue upvalue = closure.upvalues[code[ip++] & 0xff];
+					if (upvalue.open) {
+						stack[upvalue.slot] = stack[sp - 1];
+					} else {
+						upvalue.closed = stack[sp - 1];
+					}
+					break;
+				}
+				case OpCode.EQUAL: {
+					Object right = stack[--sp];
+					stack[sp - 1] = Interpreter.isEqual(stack[sp - 1], right);
+					break;
+				}
+				case OpCode.GREATER: {
+					checkNumberOperands(stack[sp - 2], stack[sp - 1], closure, ip);
+					stack[sp - 2] = (double) stack[sp - 2] > (double) stack[sp - 1];
+					sp--;
+					break;
+				}
+				case OpCode.GREATER_EQUAL: {
+					checkNumberOperands(stack[sp - 2], stack[sp - 1], closure, ip);
+					stack[sp - 2] = (double) stack[sp - 2] >= (double) stack[sp - 1];
+					sp--;
+					break;
+				}
+				case OpCode.LESS: {
+					checkNumberOperands(stack[sp - 2], stack[sp - 1], closure, ip);
+					stack[sp - 2] = (double) stack[sp - 2] < (double) stack[sp - 1];
+					sp--;
+					break;
+				}
+				case OpCode.LESS_EQUAL: {
+					checkNumberOperands(stack[sp - 2], stack[sp - 1], closure, ip);
+					stack[sp - 2] = (double) stack[sp - 2] <= (double) stack[sp - 1];
+					sp--;
+					break;
+				}
+				case OpCode.ADD: {
+					Object left = stack[sp - 2];
+					Object right = stack[sp - 1];
+					if (left instanceof Double && right instanceof Double) {
+						stack[sp - 2] = (double) left + (double) right;
+					} else if (Interpreter.isString(left) && Interpreter.isString(right)) {
+						stack[sp - 2] = Rope.concat((CharSequence) left, (CharSequence) right);
+					} else {
+						throw error(closure, ip, "Operands must be two numbers or two strings.");
+					}
+					sp--;
+					break;
+				}
+				case OpCode.SUBTRACT: {
+					checkNumberOperands(stack[sp - 2], stack[sp - 1], closure, ip);
+					stack[sp - 2] = (double) stack[sp - 2] - (double) stack[sp - 1];
+					sp--;
+					break;
+				}
+				case OpCode.MULTIPLY: {
+					checkNumberOperands(stack[sp - 2], stack[sp - 1], closure, ip);
+					stack[sp - 2] = (double) stack[sp - 2] * (double) stack[sp - 1];
+					sp--;
+					break;
+				}
+				case OpCode.DIVIDE: {
+					checkNumberOperands(stack[sp - 2], stack[sp - 1], closure, ip);
+					stack[sp - 2] = (double) stack[sp - 2] / (double) stack[sp - 1];
+					sp--;
+					break;
+				}
+				case OpCode.NOT:
+					stack[sp - 1] = !Interpreter.isTruthy(stack[sp - 1]);
+					break;
+				case OpCode.NEGATE: {
+					if (!(stack[sp - 1] instanceof Double)) {
+						throw error(closure, ip, "Operand must be a number");
+					}
+					stack[sp - 1] = -(double) stack[sp - 1];
+					break;
+				}
+				case OpCode.PRINT:
+					interpreter.print(stack[--sp]);
+					break;
+				case OpCode.JUMP:
+					ip += 2 + (((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+					break;
+				case OpCode.JUMP_IF_FALSE:
+					if (Interpreter.isTruthy(stack[sp - 1])) {
+						ip += 2;
+					} else {
+						ip += 2 + (((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+					}
+					break;
+				case OpCode.POP_JUMP_IF_FALSE:
+					if (Interpreter.isTruthy(stack[--sp])) {
+						ip += 2;
+					} else {
+						ip += 2 + (((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+					}
+					break;
+				case OpCode.LOOP:
+					ip += 2 - (((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+					break;
+				case OpCode.CALL: {
+					int argCount = code[ip++] & 0xff;
+					Object callee = stack[sp - 1 - argCount];
+					if (callee instanceof VmClosure) {
+						VmClosure function = (VmClosure) callee;
+						if (argCount != function.function.arity) {
+							throw error(closure, ip, "Expected " + function.function.arity +
+									" arguments but got " + argCount + ".");
+						}
+
+						frameIps[frameCount - 1] = ip;
+						this.sp = sp;
+						pushFrame(function, sp - 1 - argCount);
+
+						closure = function;
+						code = function.function.chunk.code;
+						constants = function.function.chunk.constants;
+						base = sp - 1 - argCount;
+						ip = 0;
+						stack = this.stack;
+					} else if (callee instanceof LoxCallable) {
+						this.sp = sp;
+						sp = callNative((LoxCallable) callee, argCount, closure, ip);
+					} else {
+						throw error(closure, ip, "Can only call functions and classes.");
+					}
+					break;
+				}
+				case OpCode.TAIL_CALL: {
+					int argCount = code[ip++] & 0xff;
+					Object callee = stack[sp - 1 - argCount];
+					if (callee instanceof VmClosure) {
+						VmClosure function = (VmClosure) callee;
+						if (argCount != function.function.arity) {
+							throw error(closure, ip, "Expected " + function.function.arity +
+									" arguments but got " + argCount + ".");
+						}
+
+						// nothing in this frame runs after the call, so the callee
+						// and its arguments replace it instead of stacking a frame
+						// on top; deep tail recursion then runs in constant stack
+						closeUpvalues(base);
+						System.arraycopy(stack, sp - 1 - argCount, stack, base, argCount + 1);
+						Arrays.fill(stack, base + argCount + 1, sp, null);
+						sp = base + argCount + 1;
+						frameClosures[frameCount - 1] = function;
+
+						closure = function;
+						code = function.function.chunk.code;
+						constants = function.function.chunk.constants;
+						ip = 0;
+					} else if (callee instanceof LoxCallable) {
+						this.sp = sp;
+						sp = callNative((LoxCallable) callee, argCount, closure, ip);
+					} else {
+						throw error(closure, ip, "Can only call functions and classes.");
+					}
+					break;
+				}
+				case OpCode.CLOSURE: {
+					VmFunction function = (VmFunction) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+					ip += 2;
+					VmClosure created = new VmClosure(function);
+					for (int i = 0; i < function.upvalueCount; i++) {
+						boolean isLocal = code[ip++] != 0;
+						int index = code[ip++] & 0xff;
+						created.upvalues[i] = isLocal
+								? captureUpvalue(base + index)
+								: closure.upvalues[index];
+					}
+					stack[sp++] = created;
+					break;
+				}
+				case OpCode.LIST: {
+					int count = code[ip++] & 0xff;
+					LoxList list = new LoxList(count);
+					for (int i = sp - count; i < sp; i++) {
+						list.add(stack[i]);
+						stack[i] = null;
+					}
+					sp -= count;
+					stack[sp++] = list;
+					break;
+				}
+				case OpCode.GET_INDEX: {
+					try {
+						stack[sp - 2] = LoxList.get(stack[sp - 2], stack[sp - 1]);
+					} catch (NativeError e) {
+						throw error(closure, ip, e.getMessage());
+					}
+					sp--;
+					break;
+				}
+				case OpCode.SET_INDEX: {
+					Object value = stack[sp - 1];
+					try {
+						LoxList.set(stack[sp - 3], stack[sp - 2], value);
+					} catch (NativeError e) {
+						throw error(closure, ip, e.getMessage());
+					}
+					sp -= 2;
+					stack[sp - 1] = value;
+					break;
+				}
+				case OpCode.CLOSE_UPVALUE:
+					closeUpvalues(sp - 1);
+					sp--;
+					break;
+				case OpCode.RETURN: {
+					Object result = stack[--sp];
+					closeUpvalues(base);
+					frameCount--;
+					sp = base;
+					if (frameCount == 0) {
+						this.sp = sp;
+						return;
+					}
+
+					stack[sp++] = result;
+					closure = frameClosures[frameCount - 1];
+					code = closure.function.chunk.code;
+					constants = closure.function.chunk.constants;
+					base = frameBases[frameCount - 1];
+					ip = frameIps[frameCount - 1];
+					break;
+				}
+				default:
+					throw new IllegalStateException("Unknown opcode " + instruction);
+			}
+		}
+	}
+
+	private void pushFrame(VmClosure closure, int base) {
+		if (frameCount == MAX_FRAMES) {
+			// the call that overflowed, which its frame's ip has moved past
+			Chunk chunk = frameClosures[frameCount - 1].function.chunk;
+			int ip = Math.max(frameIps[frameCount - 1] - 1, 0);
+			throw new LoxRuntimeError(chunk.lines[ip], chunk.modules[ip], "Stack overflow.");
+		}
+
+		if (frameCount == frameClosures.length) {
+			frameClosures = Arrays.copyOf(frameClosures, frameCount * 2);
+			frameIps = Arrays.copyOf(frameIps, frameCount * 2);
+			frameBases = Arrays.copyOf(frameBases, frameCount * 2);
+		}
+
+		if (base + FRAME_HEADROOM > stack.length) {
+			stack = Arrays.copyOf(stack, stack.length * 2);
+		}
+
+		frameClosures[frameCount] = closure;
+		frameBases[frameCount] = base;
+		frameIps[frameCount] = 0;
+		frameCount++;
+	}
+
+	private int callNative(LoxCallable callee, int argCount, VmClosure closure, int ip) {
+		if (argCount != callee.arity()) {
+			throw error(closure, ip, "Expected " + callee.arity() +
+					" arguments but got " + argCount + ".");
+		}
+
+		int first = sp - argCount;
+		Object result;
+		try {
+			result = callNative(callee, argCount, first);
+		} catch (NativeError e) {
+			throw error(closure, ip, e.getMessage());
+		}
+		int resultSlot = first - 1;
+		stack[resultSlot] = result;
+		return resultSlot + 1;
+	}
+
+	private Object callNative(LoxCallable callee, int argCount, int first) {
+		switch (argCount) {
+			case 0:
+				return callee.call0(interpreter);
+			case 1:
+				return callee.call1(interpreter, stack[first]);
+			case 2:
+				return callee.call2(interpreter, stack[first], stack[first + 1]);
+			case 3:
+				return callee.call3(interpreter, stack[first], stack[first + 1], stack[first + 2]);
+			case 4:
+				return callee.call4(interpreter, stack[first], stack[first + 1], stack[first + 2], stack[first + 3]);
+			default:
+				return callee.call(interpreter, Arrays.copyOfRange(stack, first, sp));
+		}
+	}
+
+	// inline cache for a global instruction; only valid for the Globals it was filled from
+	private Globals.Cell globalCell(Chunk chunk, int index) {
+		Globals.Cell cell = chunk.globalCells[index];
+		if (cell == null || cell.owner != globals) {
+			cell = globals.cell((Token) chunk.constants[index]);
+			chunk.globalCells[index] = cell;
+		}
+		return cell;
+	}
+
+	private VmClosure.Upvalue captureUpvalue(int slot) {
+		VmClosure.Upvalue previous = null;
+		VmClosure.Upvalue upvalue = openUpvalues;
+		while (upvalue != null && upvalue.slot > slot) {
+			previous = upvalue;
+			upvalue = upvalue.next;
+		}
+
+		if (upvalue != null && upvalue.slot == slot) {
+			return upvalue;
+		}
+
+		VmClosure.Upvalue created = new VmClosure.Upvalue(slot, upvalue);
+		if (previous == null) {
+			openUpvalues = created;
+		} else {
+			previous.next = created;
+		}
+
+		return created;
+	}
+
+	private void closeUpvalues(int lastSlot) {
+		while (openUpvalues != null && openUpvalues.slot >= lastSlot) {
+			VmClosure.Upvalue upvalue = openUpvalues;
+			upvalue.closed = stack[upvalue.slot];
+			upvalue.open = false;
+			openUpvalues = upvalue.next;
+		}
+	}
+
+	private void checkNumberOperands(Object left, Object right, VmClosure closure, int ip) {
+		if (!(left instanceof Double && right instanceof Double)) {
+			throw error(closure, ip, "Operands must be numbers");
+		}
+	}
+
+	private LoxRuntimeError error(VmClosure closure, int ip, String message) {
+		// ip has already moved past the failing instruction
+		Chunk chunk = closure.function.chunk;
+		return new LoxRuntimeError(chunk.lines[ip - 1], chunk.modules[ip - 1], message);
+	}
+}
@@ -0,0 +1,32 @@
+package com.ryanpmartz.lox;
+
+// runtime function value in the bytecode VM: a function plus the variables it captured
+class VmClosure {
+
+	final VmFunction function;
+	final Upvalue[] upvalues;
+
+	VmClosure(VmFunction function) {
+		this.function = function;
+		this.upvalues = new Upvalue[function.upvalueCount];
+	}
+
+	@Override
+	public String toString() {
+		return function.toString();
+	}
+
+	// a captured variable; points at a VM stack slot until that slot goes out of scope
+	static class Upvalue {
+
+		final int slot;
+		Object closed;
+		boolean open = true;
+		Upvalue next; // open upvalues form a list sorted by slot, highest first
+
+		Upvalue(int slot, Upvalue next) {
+			this.slot = slot;
+			this.next = next;
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package com.ryanpmartz.lox;
+
+// compile-time representation of a function for the bytecode VM
+class VmFunction {
+
+	final String name;
+	final int arity;
+	final Chunk chunk = new Chunk();
+	int upvalueCount = 0;
+
+	VmFunction(String name, int arity) {
+		this.name = name;
+		this.arity = arity;
+	}
+
+	@Override
+	public String toString() {
+		return name == null ? "<script>" : "<fn " + name + ">";
+	}
+}
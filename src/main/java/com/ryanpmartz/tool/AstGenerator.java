@@ -17,25 +17,29 @@ public class AstGenerator {
 		String outputDir = args[0];
 
 		defineAst(outputDir, "Expr", Arrays.asList(
-				"Assign   : Token name, Expr value",
-				"Binary   : Expr left, Token operator, Expr right",
+				"Assign   : Token name, Expr value | int storage = Resolver.GLOBAL, int slot, Globals.Cell cell",
+				"Binary   : Expr left, Token operator, Expr right | BinaryNode node = new BinaryNode.Uninitialized()",
 				"Call     : Expr callee, Token paren, List<Expr> arguments",
 				"Grouping : Expr expression",
+				"Index    : Expr object, Token bracket, Expr index",
+				"ListLiteral : List<Expr> elements",
 				"Literal  : Object value",
 				"Logical  : Expr left, Token operator, Expr right",
-				"Unary    : Token operator, Expr right",
-				"Variable : Token name"
+				"SetIndex : Expr object, Token bracket, Expr index, Expr value",
+				"Unary    : Token operator, Expr right | UnaryNode node = new UnaryNode.Uninitialized()",
+				"Variable : Token name | int storage = Resolver.GLOBAL, int slot, Stmt.Var declaration, Globals.Cell cell"
 		));
 
 		defineAst(outputDir, "Stmt", Arrays.asList(
-				"Block      : List<Stmt> statements",
+				"Block      : List<Stmt> statements | int stackSize",
 				"Expression : Expr expression",
-				"Function   : Token name, List<Token> params, List<Stmt> body",
+				"Function   : Token name, List<Token> params, List<Stmt> body | int storage = Resolver.GLOBAL, int slot, int stackSize, int[] capturedParams, int[] captures, int calls, boolean compileAttempted, volatile CompiledFunction compiled, Memo memo",
 				"If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
+				"Import     : Token keyword, Token path",
 				"Print      : Expr expression",
-				"Return     : Token keyword, Expr value",
-				"Var        : Token name, Expr initializer",
-				"While      : Expr condition, Stmt body"
+				"Return     : Token keyword, Expr value | boolean tailCall",
+				"Var        : Token name, Expr initializer | int storage = Resolver.GLOBAL, int slot, boolean reassigned",
+				"While      : Expr condition, Stmt body | boolean analyzed, CountedLoop counted"
 		));
 
 	}
@@ -55,8 +59,9 @@ public class AstGenerator {
 		// The AST classes
 		for (String type : types) {
 			String className = type.split(":")[0].trim();
-			String fields = type.split(":")[1].trim();
-			defineType(writer, baseName, className, fields);
+			String[] fields = type.split(":")[1].split("\\|");
+			String resolved = fields.length > 1 ? fields[1].trim() : null;
+			defineType(writer, baseName, className, fields[0].trim(), resolved);
 		}
 
 		// add base accept() method.
@@ -83,7 +88,7 @@ public class AstGenerator {
 
 	private static void defineType(
 			PrintWriter writer, String baseName,
-			String className, String fieldList) {
+			String className, String fieldList, String resolvedList) {
 
 
 		writer.println(" public static class " + className + " extends " +
@@ -113,6 +118,13 @@ public class AstGenerator {
 			writer.println(" public final " + field + ";");
 		}
 
+		// Mutable fields filled in after parsing, by the Resolver or at run time.
+		if (resolvedList != null) {
+			for (String field : resolvedList.split(", ")) {
+				writer.println(" " + field + ";");
+			}
+		}
+
 		writer.println("  }");
 	}
 }
@@ -0,0 +1,57 @@
+package com.ryanpmartz.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class BinaryNodeTest {
+
+	@Test
+	public void testSiteSpecializesAfterWarmup() {
+		Expr.Binary site = plus();
+		assertTrue(site.node instanceof BinaryNode.Uninitialized);
+
+		for (int i = 0; i < BinaryNode.WARMUP; i++) {
+			assertEquals(3.0, site.node.execute(site, 1.0, 2.0));
+		}
+
+		assertTrue(site.node instanceof BinaryNode.AddDoubles);
+	}
+
+	@Test
+	public void testFailedGuardFallsBackToGeneric() {
+		Expr.Binary site = plus();
+		for (int i = 0; i < BinaryNode.WARMUP; i++) {
+			site.node.execute(site, 1.0, 2.0);
+		}
+
+		assertEquals("ab", site.node.execute(site, "a", "b"));
+		assertTrue(site.node instanceof BinaryNode.Generic);
+		assertEquals(3.0, site.node.execute(site, 1.0, 2.0));
+	}
+
+	@Test
+	public void testMixedFeedbackStaysGeneric() {
+		Expr.Binary site = plus();
+		site.node.execute(site, 1.0, 2.0);
+		site.node.execute(site, "a", "b");
+
+		assertTrue(site.node instanceof BinaryNode.Generic);
+	}
+
+	@Test
+	public void testUnboxedOperandsFallBackWhenTypesChange() {
+		String source = "fun f(a, b) { var x = 0; x = a + b * 2; return x + (a + b); }\n" +
+				"print f(1, 2); print f(3, 4); print f(5, 6);\n" +
+				"fun g(a, b) { return a + b; }\n" +
+				"print g(1, 2); print g(3, 4); print g(\"a\", \"b\");";
+
+		assertEquals("8\n18\n28\n3\n7\nab\n", TestPrograms.run(source));
+	}
+
+	private Expr.Binary plus() {
+		Token plus = new Token(TokenType.PLUS, "+", null, 1);
+		return new Expr.Binary(new Expr.Literal(null), plus, new Expr.Literal(null));
+	}
+}
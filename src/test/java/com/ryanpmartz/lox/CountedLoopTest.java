@@ -0,0 +1,39 @@
+package com.ryanpmartz.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class CountedLoopTest {
+
+	@Test
+	public void testRecognizesDesugaredForLoops() {
+		CountedLoop loop = CountedLoop.recognize(firstLoop("fun f() { for (var i = 10; i >= 0; i = i - 2) print i; }"));
+
+		assertNotNull(loop);
+		assertEquals(-2.0, loop.step);
+		assertTrue(loop.invariantBound);
+		assertTrue(loop.comparison instanceof BinaryNode.GreaterEqualDoubles);
+
+		assertNull(CountedLoop.recognize(firstLoop("fun f() { for (var i = 0; i < 10; i = i * 2) print i; }")));
+	}
+
+	@Test
+	public void testFallsBackWhenTheBodyReassignsTheCounter() {
+		String source = "fun f() { var t = 0; for (var i = 0; i < 10; i = i + 1) { if (i == 3) i = 7; t = t + i; } print t; }\n" +
+				"f();\n" +
+				"fun g() { for (var i = 0; i < 4; i = i + 1) { if (i == 1) i = \"one\" + \"!\"; print i; } }\n" +
+				"g();";
+
+		assertEquals("27\n0\none!\n", TestPrograms.run(source));
+	}
+
+	private static Stmt.While firstLoop(String source) {
+		Stmt.Function function = (Stmt.Function) TestPrograms.parse(source).get(0);
+		Stmt.Block block = (Stmt.Block) function.body.get(0);
+		return (Stmt.While) block.statements.get(1);
+	}
+}
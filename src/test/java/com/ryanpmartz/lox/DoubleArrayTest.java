@@ -0,0 +1,35 @@
+package com.ryanpmartz.lox;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class DoubleArrayTest {
+
+	@Test
+	public void testBulkOperationsCoverTheTailPastTheUnrolledLoop() {
+		double[] values = new double[7];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = i + 1;
+		}
+		DoubleArray a = new DoubleArray(values);
+
+		assertEquals(28.0, DoubleArray.sum(a));
+		assertEquals(140.0, DoubleArray.dot(a, a));
+		assertEquals(1.0, DoubleArray.min(a));
+		assertEquals(7.0, DoubleArray.max(a));
+		assertArrayEquals(new double[] {2, 4, 6, 8, 10, 12, 14}, DoubleArray.add(a, a).values);
+		assertArrayEquals(new double[] {0.5, 1, 1.5, 2, 2.5, 3, 3.5}, DoubleArray.scale(a, 0.5).values);
+	}
+
+	@Test
+	public void testArraysOfDifferentLengthsAreAnError() {
+		DoubleArray a = new DoubleArray(new double[3]);
+		DoubleArray b = new DoubleArray(new double[4]);
+
+		assertThrows(NativeError.class, () -> DoubleArray.multiply(a, b));
+		assertThrows(NativeError.class, () -> DoubleArray.min(new DoubleArray(new double[0])));
+	}
+}
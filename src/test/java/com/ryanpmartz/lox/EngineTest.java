@@ -0,0 +1,62 @@
+package com.ryanpmartz.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class EngineTest {
+
+	@Test
+	public void testContextsRunConcurrentlyWithTheirOwnGlobals() throws Exception {
+		Engine engine = Engine.compile("fun scale(x) { return x * factor; }\n" +
+				"var total = 0;\n" +
+				"for (var i = 0; i < 1000; i = i + 1) total = total + scale(i);\n" +
+				"print name + \": \" + \"done\";");
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> runs = new ArrayList<>();
+			for (int n = 0; n < 200; n++) {
+				int factor = n;
+				runs.add(executor.submit(() -> {
+					ByteArrayOutputStream output = new ByteArrayOutputStream();
+					Context context = engine.newContext(new PrintStream(output));
+					context.define("factor", factor);
+					context.define("name", "run" + factor);
+					if (!context.run()) {
+						return context.errors().toString();
+					}
+					return context.get("total") + " " + output;
+				}));
+			}
+
+			for (int n = 0; n < runs.size(); n++) {
+				assertEquals(499500.0 * n + " run" + n + ": done\n", runs.get(n).get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testErrorsAreCollectedNotPrinted() {
+		LoxCompileError error = assertThrows(LoxCompileError.class, () -> Engine.compile("var a = ;\nprint 1 +;"));
+		assertEquals(List.of("[line 1] Error at ';': Expect expression.", "[line 2] Error at ';': Expect expression."),
+				error.errors());
+		assertFalse(Lox.hadError);
+
+		Context context = Engine.compile("print -missing;").newContext();
+		assertFalse(context.run());
+		assertEquals(List.of("Undefined variable 'missing'. \n[line 1]"), context.errors());
+	}
+}
@@ -0,0 +1,36 @@
+package com.ryanpmartz.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class GlobalsTest {
+
+	private final Token name = new Token(TokenType.IDENTIFIER, "a", null, 1);
+
+	@Test
+	public void testCellIsStableAcrossDefinitions() {
+		Globals globals = new Globals();
+		Globals.Cell cell = globals.cell("a");
+
+		globals.define("a", 1.0);
+		globals.define("a", 2.0);
+
+		assertSame(cell, globals.cell("a"));
+		assertEquals(2.0, Globals.get(cell, name));
+	}
+
+	@Test
+	public void testLookUpBeforeDefinitionIsAnError() {
+		Globals globals = new Globals();
+		Globals.Cell cell = globals.cell("a");
+
+		LoxRuntimeError error = assertThrows(LoxRuntimeError.class, () -> Globals.get(cell, name));
+		assertEquals("Undefined variable 'a'. ", error.getMessage());
+
+		globals.define("a", "late");
+		assertEquals("late", Globals.get(cell, name));
+	}
+}
@@ -0,0 +1,71 @@
+package com.ryanpmartz.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class JvmCompilerTest {
+
+	@Test
+	public void testCompiledFunctionMatchesInterpreter() {
+		String source = "var total = 0;\n" +
+				"fun outer() { var step = 2;\n" +
+				"  fun kernel(n) { var s = 0; var i = 0;\n" +
+				"    while (i < n) { { var sq = i * i; s = s + sq; } i = i + step; }\n" +
+				"    total = total + 1;\n" +
+				"    if (n > 5 and n != 7) return s; else return -s; }\n" +
+				"  return kernel; }\n" +
+				"var k = outer();\n" +
+				"for (var i = 0; i < 1500; i = i + 1) k(i);\n" +
+				"print k(10); print k(7); print total;";
+
+		assertEquals(TestPrograms.run(source, false), TestPrograms.run(source, true));
+	}
+
+	@Test
+	public void testBodiesWithNestedFunctionsAreNotCompiled() {
+		List<Stmt> statements = TestPrograms.parse("fun outer() { fun inner() {} return inner; }");
+
+		assertNull(JvmCompiler.compile((Stmt.Function) statements.get(0)));
+	}
+
+	@Test
+	public void testSimpleFunctionCompiles() {
+		List<Stmt> statements = TestPrograms.parse("fun add(a, b) { return a + b; }");
+
+		assertNotNull(JvmCompiler.compile((Stmt.Function) statements.get(0)));
+	}
+
+	@Test
+	public void testFunctionIsOnlyCompiledOnce() throws InterruptedException {
+		Stmt.Function add = (Stmt.Function) TestPrograms.parse("fun add(a, b) { return a + b; }").get(0);
+
+		// as when tasks on several threads find the same function hot together
+		List<Thread> threads = new ArrayList<>();
+		List<CompiledFunction> seen = Collections.synchronizedList(new ArrayList<>());
+		for (int i = 0; i < 4; i++) {
+			threads.add(new Thread(() -> {
+				JvmCompiler.compileOnce(add);
+				seen.add(add.compiled);
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertNotNull(add.compiled);
+		for (CompiledFunction compiled : seen) {
+			assertSame(add.compiled, compiled);
+		}
+	}
+}
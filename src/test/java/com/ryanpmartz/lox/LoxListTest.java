@@ -0,0 +1,71 @@
+package com.ryanpmartz.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.Test;
+
+class LoxListTest {
+
+	@Test
+	public void testNumbersStayUnboxedUntilAnythingElseIsStored() {
+		LoxList list = new LoxList(0);
+		for (int i = 0; i < 100; i++) {
+			list.add((double) i);
+		}
+		assertTrue(list.holdsNumbers());
+		assertEquals(99.0, list.number(99));
+
+		list.set(50, "fifty");
+		assertFalse(list.holdsNumbers());
+		assertEquals("fifty", list.get(50));
+		assertEquals(49.0, list.get(49));
+		assertEquals(100, list.size());
+	}
+
+	@Test
+	public void testListLiteralsIndexingAndNatives() {
+		Engine engine = Engine.compile("var xs = [3, 1, 2];\n" +
+				"push(xs, 0);\n" +
+				"xs[1] = xs[1] + 10;\n" +
+				"sort(xs);\n" +
+				"print xs;\n" +
+				"print pop(xs) + len(xs);");
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		assertTrue(engine.newContext(new PrintStream(output)).run());
+		assertEquals("[0, 2, 3, 11]\n14\n", output.toString().replace(System.lineSeparator(), "\n"));
+	}
+
+	@Test
+	public void testListsInsideThemselvesPrintAsEllipses() {
+		LoxList a = LoxList.of(new Object[] {0.0});
+		LoxList b = LoxList.of(new Object[] {a});
+		a.set(0, b);
+		assertEquals("[[[...]]]", a.toString());
+
+		a.set(0, a);
+		assertEquals("[[...]]", a.toString());
+		assertEquals("[[[...]]]", b.toString());
+	}
+
+	@Test
+	public void testListsOfNumbersSortAgainOnceTheOtherValuesAreGone() {
+		LoxList popped = LoxList.of(new Object[] {3.0, 1.0, 2.0});
+		popped.add("x");
+		popped.removeLast();
+		popped.sort();
+		assertEquals("[1, 2, 3]", popped.toString());
+		assertTrue(popped.holdsNumbers());
+
+		LoxList replaced = LoxList.of(new Object[] {1.0, "a"});
+		replaced.set(1, 0.0);
+		replaced.sort();
+		assertEquals("[0, 1]", replaced.toString());
+		assertTrue(replaced.holdsNumbers());
+	}
+}
@@ -0,0 +1,56 @@
+package com.ryanpmartz.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LoxMapTest {
+
+	@Test
+	public void testKeysMatchTheWayEqualityDoes() {
+		LoxMap map = new LoxMap();
+		map.put(0.0, "zero");
+		map.put(-0.0, "negative zero");
+		map.put(Double.NaN, "nan");
+		String text = "x".repeat(Rope.MIN_LENGTH);
+		map.put(Rope.concat(text, "y"), "rope");
+
+		assertEquals("zero", map.get(0.0));
+		assertEquals("negative zero", map.get(-0.0));
+		assertEquals("nan", map.get(0.0 / 0.0));
+		assertEquals("rope", map.get(text + "y"));
+		assertNull(map.get("0"));
+	}
+
+	@Test
+	public void testEntriesStayInInsertionOrderThroughRemovalsAndGrowth() {
+		LoxMap map = new LoxMap();
+		for (int i = 0; i < 1000; i++) {
+			map.put((double) i, (double) i);
+		}
+		for (int i = 0; i < 1000; i += 2) {
+			map.remove((double) i);
+		}
+		map.put(0.0, "again");
+
+		assertEquals(501, map.size());
+		assertFalse(map.has(2.0));
+		assertTrue(map.has(999.0));
+		LoxList keys = map.keys();
+		assertEquals(1.0, keys.get(0));
+		assertEquals(0.0, keys.get(500));
+	}
+
+	@Test
+	public void testMapsInsideThemselvesPrintAsEllipses() {
+		LoxMap map = new LoxMap();
+		map.put("xs", LoxList.of(new Object[] {map}));
+		assertEquals("{xs: [{...}]}", map.toString());
+
+		map.put("self", map);
+		assertEquals("{xs: [{...}], self: {...}}", map.toString());
+	}
+}
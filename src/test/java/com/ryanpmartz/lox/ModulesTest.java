@@ -0,0 +1,91 @@
+package com.ryanpmartz.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ModulesTest {
+
+	@Test
+	public void testModulesKeepTheirTopLevelNamesToThemselves(@TempDir Path directory) throws IOException {
+		Files.writeString(directory.resolve("counter.lox"),
+				"var count = 0;\n" +
+				"fun bump() { count = count + 1; return count; }\n" +
+				"print \"loaded\";");
+		Files.writeString(directory.resolve("twice.lox"),
+				"import \"counter.lox\";\n" +
+				"fun twice() { bump(); return bump(); }");
+
+		Engine engine = Engine.compile("import \"" + directory.resolve("twice.lox") + "\";\n" +
+				"import \"" + directory.resolve("counter.lox") + "\";\n" +
+				"var count = \"mine\";\n" +
+				"print twice();\n" +
+				"print bump();\n" +
+				"print count;");
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		assertTrue(engine.newContext(new PrintStream(output)).run());
+		assertEquals("loaded\n2\n3\nmine\n", output.toString().replace(System.lineSeparator(), "\n"));
+	}
+
+	@Test
+	public void testModulesDontSeeTheirImportersNames(@TempDir Path directory) throws IOException {
+		Files.writeString(directory.resolve("lib.lox"),
+				"fun peek() { return secret; }\n" +
+				"fun poke() { secret = \"lib\"; }");
+
+		Engine poke = Engine.compile("import \"" + directory.resolve("lib.lox") + "\";\n" +
+				"var secret = \"main\";\n" +
+				"poke();");
+		Context context = poke.newContext(new PrintStream(new ByteArrayOutputStream()));
+		assertFalse(context.run());
+		assertTrue(context.errors().get(0).contains("Undefined variable 'secret'"), context.errors().get(0));
+		assertEquals("main", context.get("secret"));
+
+		Engine peek = Engine.compile("import \"" + directory.resolve("lib.lox") + "\";\n" +
+				"var secret = \"main\";\n" +
+				"print peek();");
+		context = peek.newContext(new PrintStream(new ByteArrayOutputStream()));
+		assertFalse(context.run());
+		assertTrue(context.errors().get(0).contains("Undefined variable 'secret'"), context.errors().get(0));
+	}
+
+	@Test
+	public void testRuntimeErrorsNameTheirModule(@TempDir Path directory) throws IOException {
+		Files.writeString(directory.resolve("lib.lox"), "\nfun broken() { return 1 + nil; }");
+
+		Engine engine = Engine.compile("import \"" + directory.resolve("lib.lox") + "\";\n" +
+				"broken();");
+		Context context = engine.newContext(new PrintStream(new ByteArrayOutputStream()));
+		assertFalse(context.run());
+		String error = context.errors().get(0);
+		assertTrue(error.contains("lib.lox: Operands must be two numbers or two strings.\n[line 2]"), error);
+
+		context = Engine.compile("print 1 + nil;").newContext(new PrintStream(new ByteArrayOutputStream()));
+		assertFalse(context.run());
+		assertEquals("Operands must be two numbers or two strings.\n[line 1]", context.errors().get(0));
+	}
+
+	@Test
+	public void testImportCyclesAreReported(@TempDir Path directory) throws IOException {
+		Files.writeString(directory.resolve("a.lox"), "import \"b.lox\";");
+		Files.writeString(directory.resolve("b.lox"), "\nimport \"a.lox\";");
+
+		LoxCompileError error = assertThrows(LoxCompileError.class,
+				() -> Engine.compile("import \"" + directory.resolve("a.lox") + "\";"));
+		List<String> errors = error.errors();
+		assertEquals(1, errors.size());
+		assertTrue(errors.get(0).contains("b.lox: [line 2] Error at 'import': Import cycle through"), errors.get(0));
+	}
+}
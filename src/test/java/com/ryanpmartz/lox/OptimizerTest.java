@@ -0,0 +1,46 @@
+package com.ryanpmartz.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class OptimizerTest {
+
+	@Test
+	public void testFoldsLiteralArithmetic() {
+		Stmt.Print print = (Stmt.Print) optimize("print 1 + 2 * 3;").get(0);
+
+		assertEquals(7.0, ((Expr.Literal) print.expression).value);
+	}
+
+	@Test
+	public void testLeavesFailingOperationsForRuntime() {
+		Stmt.Print print = (Stmt.Print) optimize("print \"a\" - 1;").get(0);
+
+		assertTrue(print.expression instanceof Expr.Binary);
+	}
+
+	@Test
+	public void testPrunesDeadBranches() {
+		List<Stmt> statements = optimize("if (false) print 1; while (nil) print 2; if (1 < 2) print 3; else print 4;");
+
+		assertEquals(1, statements.size());
+		assertEquals(3.0, ((Expr.Literal) ((Stmt.Print) statements.get(0)).expression).value);
+	}
+
+	@Test
+	public void testPropagatesNeverReassignedLocals() {
+		Stmt.Block block = (Stmt.Block) optimize("{ var a = 2; var b = 3; b = 4; print a * 10 + b; }").get(0);
+		Expr.Binary sum = (Expr.Binary) ((Stmt.Print) block.statements.get(3)).expression;
+
+		assertEquals(20.0, ((Expr.Literal) sum.left).value);
+		assertTrue(sum.right instanceof Expr.Variable);
+	}
+
+	private List<Stmt> optimize(String source) {
+		return new Optimizer().optimize(TestPrograms.parse(source));
+	}
+}
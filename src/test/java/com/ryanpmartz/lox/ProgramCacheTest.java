@@ -0,0 +1,56 @@
+package com.ryanpmartz.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ProgramCacheTest {
+
+	@AfterEach
+	public void clearCacheDirectory() {
+		System.clearProperty("jlox.cache");
+	}
+
+	@Test
+	public void testCachedProgramRunsLikeTheCompiledOne(@TempDir Path directory) throws IOException {
+		System.setProperty("jlox.cache", directory.resolve("cache").toString());
+		Path module = directory.resolve("shapes.lox");
+		Files.writeString(module, "var sides = 4;\nfun area(w, h) { return w * h; }");
+		Path script = directory.resolve("main.lox");
+		String source = "import \"shapes.lox\";\n" +
+				"var total = 0;\n" +
+				"fun add(n) { fun inner() { total = total + n; } inner(); }\n" +
+				"for (var i = 0; i < sides; i = i + 1) add(area(i, 2));\n" +
+				"var words = [\"a\", nil, true, 1.5];\n" +
+				"print total;\n" +
+				"print words[0] + \"b\";\n" +
+				"print words[3];";
+
+		Modules.Session session = new Modules.Session();
+		List<Stmt> compiled = Modules.load(source, directory, session);
+		ProgramCache.store(script, source, compiled, session.ran());
+
+		List<Stmt> cached = ProgramCache.load(script, source);
+		assertNotNull(cached);
+		assertEquals("12\nab\n1.5\n", TestPrograms.run(cached));
+		assertEquals(TestPrograms.run(compiled), TestPrograms.run(cached));
+		// tokens keep the module they came from, which runtime errors name
+		assertNotNull(((Stmt.Var) cached.get(0)).name.module);
+		assertEquals(((Stmt.Var) compiled.get(0)).name.module, ((Stmt.Var) cached.get(0)).name.module);
+		assertNull(((Stmt.Var) cached.get(3)).name.module);
+
+		// a changed import makes the entry stale
+		Files.writeString(module, "var sides = 5;\nfun area(w, h) { return w * h; }");
+		assertNull(ProgramCache.load(script, source));
+		assertNull(ProgramCache.load(script, source + "\n"));
+	}
+}
@@ -0,0 +1,50 @@
+package com.ryanpmartz.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class PurityTest {
+
+	@Test
+	public void testOnlyFunctionsWithoutEffectsArePure() {
+		String source = "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n" +
+				"fun double(n) { var twice = n + n; return twice; }\n" +
+				"fun quad(n) { return double(double(n)); }\n" +
+				"var total = 0;\n" +
+				"fun add(n) { total = total + n; return total; }\n" +
+				"fun read(n) { return n + total; }\n" +
+				"fun log(n) { print n; return n; }\n" +
+				"fun logTwice(n) { return log(log(n)); }\n" +
+				"fun time() { return clock(); }\n" +
+				"fun apply(f, n) { return f(n); }\n" +
+				"fun adder(n) { fun add(m) { return n + m; } return add; }";
+
+		assertEquals(List.of("fib", "double", "quad"), names(Purity.memoize(TestPrograms.parse(source))));
+	}
+
+	@Test
+	public void testMemoizedCallsAnswerFromTheCache() {
+		List<Stmt> statements = TestPrograms.parse("fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n" +
+				"var result = fib(40);");
+		Stmt.Function fib = Purity.memoize(statements).get(0);
+
+		Interpreter interpreter = new Interpreter();
+		interpreter.interpret(statements);
+
+		assertEquals(102334155.0, interpreter.globals.cell("result").value);
+		assertEquals(41, fib.memo.misses());
+		assertEquals(38, fib.memo.hits());
+	}
+
+	private static List<String> names(List<Stmt.Function> functions) {
+		List<String> names = new ArrayList<>();
+		for (Stmt.Function function : functions) {
+			names.add(function.name.lexeme);
+		}
+		return names;
+	}
+}
@@ -0,0 +1,50 @@
+package com.ryanpmartz.lox;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class ResolverTest {
+
+	@Test
+	public void testOnlyCapturedLocalsGetCells() {
+		Stmt.Function outer = (Stmt.Function) TestPrograms.parse(
+				"fun outer(a, b) { var x = a; fun inner() { return b; } return inner; }").get(0);
+
+		assertArrayEquals(new int[]{1}, outer.capturedParams);
+
+		Stmt.Var x = (Stmt.Var) outer.body.get(0);
+		assertEquals(Resolver.STACK, x.storage);
+		assertEquals(Resolver.STACK, ((Expr.Variable) x.initializer).storage);
+
+		Stmt.Function inner = (Stmt.Function) outer.body.get(1);
+		Expr.Variable b = (Expr.Variable) ((Stmt.Return) inner.body.get(0)).value;
+		assertEquals(Resolver.UPVALUE, b.storage);
+		assertEquals(0, b.slot);
+		assertArrayEquals(new int[]{1}, inner.captures); // b's stack slot in outer
+	}
+
+	@Test
+	public void testFunctionsCaptureOnlyTheirFreeVariables() {
+		Stmt.Function outer = (Stmt.Function) TestPrograms.parse(
+				"fun outer() { var big = 1; var used = 2; fun middle() { fun inner() { return used; } } }").get(0);
+
+		Stmt.Function middle = (Stmt.Function) outer.body.get(2);
+		Stmt.Function inner = (Stmt.Function) middle.body.get(0);
+		assertArrayEquals(new int[]{1}, middle.captures);
+		assertArrayEquals(new int[]{-1}, inner.captures); // middle's upvalue 0
+		assertEquals(Resolver.STACK, ((Stmt.Var) outer.body.get(0)).storage);
+		assertEquals(Resolver.CELL, ((Stmt.Var) outer.body.get(1)).storage);
+	}
+
+	@Test
+	public void testSiblingBlocksReuseStackSlots() {
+		Stmt.Function function = (Stmt.Function) TestPrograms.parse(
+				"fun f() { { var a = 1; var b = 2; } { var c = 3; } }").get(0);
+
+		Stmt.Block second = (Stmt.Block) function.body.get(1);
+		assertEquals(0, ((Stmt.Var) second.statements.get(0)).slot);
+		assertEquals(2, function.stackSize);
+	}
+}
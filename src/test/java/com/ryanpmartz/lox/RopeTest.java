@@ -0,0 +1,37 @@
+package com.ryanpmartz.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class RopeTest {
+
+	@Test
+	public void testDeepRopesFlattenInOrder() {
+		CharSequence built = "";
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			built = Rope.concat(built, i + ",");
+			expected.append(i).append(',');
+		}
+
+		assertTrue(built instanceof Rope);
+		assertEquals(expected.length(), built.length());
+		assertEquals(expected.toString(), Interpreter.stringify(built));
+	}
+
+	@Test
+	public void testRopesEqualStringsWithTheSameCharacters() {
+		String text = "x".repeat(Rope.MIN_LENGTH);
+		CharSequence rope = Rope.concat(text, "y");
+		String string = text + "y";
+
+		assertTrue(Interpreter.isEqual(rope, string));
+		assertTrue(Interpreter.isEqual(string, rope));
+		assertTrue(Interpreter.isEqual(rope, Rope.concat(text, "y")));
+		assertFalse(Interpreter.isEqual(string, Rope.concat(text, "z")));
+		assertEquals(string.hashCode(), rope.hashCode());
+	}
+}
@@ -2,9 +2,17 @@ package com.ryanpmartz.lox;
 
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 import org.junit.jupiter.api.Test;
 
@@ -84,4 +92,42 @@ class ScannerTest {
 		}
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testIdentifiersShareTheirSymbol() {
+		List<Token> tokens = new Scanner("count while counter count").scanTokens();
+
+		assertEquals(tokens.get(0).symbol, tokens.get(3).symbol);
+		assertSame(tokens.get(0).lexeme, tokens.get(3).lexeme);
+		assertNotEquals(tokens.get(0).symbol, tokens.get(2).symbol);
+		assertEquals(TokenType.WHILE, tokens.get(1).type);
+		assertEquals(Symbols.NONE, tokens.get(4).symbol);
+	}
+
+	@Test
+	public void testKeywordsDontDependOnTheLocale() throws Exception {
+		Locale original = Locale.getDefault();
+		Locale.setDefault(new Locale("tr", "TR"));
+		try {
+			// the keyword table is built when Scanner is initialized, which has
+			// happened already in this class loader, so it's done again in another
+			URL classes = Scanner.class.getProtectionDomain().getCodeSource().getLocation();
+			try (URLClassLoader loader = new URLClassLoader(new URL[] {classes}, ClassLoader.getPlatformClassLoader())) {
+				Class<?> scanner = loader.loadClass(Scanner.class.getName());
+				Method scanTokens = scanner.getDeclaredMethod("scanTokens");
+				scanTokens.setAccessible(true);
+				List<?> tokens = (List<?>) scanTokens.invoke(scanner.getConstructor(String.class)
+						.newInstance("if print while nil this import"));
+
+				Field type = loader.loadClass(Token.class.getName()).getDeclaredField("type");
+				type.setAccessible(true);
+				List<String> types = new ArrayList<>();
+				for (Object token : tokens) {
+					types.add(type.get(token).toString());
+				}
+				assertEquals(List.of("IF", "PRINT", "WHILE", "NIL", "THIS", "IMPORT", "EOF"), types);
+			}
+		} finally {
+			Locale.setDefault(original);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package com.ryanpmartz.lox;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// how long the jar the cds profile packages takes to run a short script, as the
+// median wall time of several runs with its class-data archive and without.
+// Exits with 1, which fails the build, when the archive doesn't make startup
+// faster, or when a budget is given (wall times depend on the machine, so by
+// default it isn't) and the runs with the archive take longer than it.
+//
+//   StartupBenchmark <jar> <archive> <cache directory> <script> [budget in ms]
+class StartupBenchmark {
+
+	private static final int WARMUP = 3;
+	private static final int RUNS = 15;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 4 || args.length > 5) {
+			System.err.println("Usage: StartupBenchmark <jar> <archive> <cache directory> <script> [budget in ms]");
+			System.exit(64);
+		}
+		String jar = args[0];
+		String archive = args[1];
+		String cache = args[2];
+		String script = args[3];
+		// 0 too means no budget, which is what the pom passes by default
+		long budget = args.length == 5 ? Long.parseLong(args[4]) : 0;
+
+		// -Xshare:on, so an archive the JVM can't map fails loudly instead of
+		// silently measuring startup without it
+		long shared = median(jar, cache, script, "-Xshare:on", "-XX:SharedArchiveFile=" + archive);
+		long plain = median(jar, cache, script, "-Xshare:auto");
+
+		System.out.println("startup: " + shared + " ms with the archive, " + plain + " ms without"
+				+ (budget > 0 ? ", budget " + budget + " ms" : ""));
+		if (shared >= plain) {
+			System.err.println("Startup with the archive took " + shared + " ms, no faster than " + plain + " ms without it.");
+			System.exit(1);
+		}
+		if (budget > 0 && shared > budget) {
+			System.err.println("Startup with the archive took " + shared + " ms, over its budget of " + budget + " ms.");
+			System.exit(1);
+		}
+	}
+
+	private static long median(String jar, String cache, String script, String... options)
+			throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(Arrays.asList(options));
+		command.add("-Djlox.cache=" + cache);
+		command.add("-cp");
+		command.add(jar);
+		command.add("com.ryanpmartz.lox.Lox");
+		command.add(script);
+
+		long[] times = new long[RUNS];
+		for (int i = -WARMUP; i < RUNS; i++) {
+			long start = System.nanoTime();
+			Process process = new ProcessBuilder(command)
+					.redirectOutput(ProcessBuilder.Redirect.DISCARD)
+					.redirectError(ProcessBuilder.Redirect.INHERIT)
+					.start();
+			if (process.waitFor() != 0) {
+				throw new IllegalStateException(String.join(" ", command) + " exited with " + process.exitValue() + ".");
+			}
+			if (i >= 0) {
+				times[i] = (System.nanoTime() - start) / 1_000_000;
+			}
+		}
+
+		Arrays.sort(times);
+		return times[RUNS / 2];
+	}
+}
@@ -0,0 +1,45 @@
+package com.ryanpmartz.lox;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class SymbolsTest {
+
+	@Test
+	public void testThreadsInterningTheSameNamesAgree() throws Exception {
+		int names = 5000;
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<int[]>> results = new ArrayList<>();
+			for (int thread = 0; thread < 4; thread++) {
+				int offset = thread;
+				results.add(executor.submit(() -> {
+					int[] symbols = new int[names];
+					for (int i = 0; i < names; i++) {
+						int name = (i + offset * 1237) % names; // each thread meets them in another order
+						symbols[name] = Symbols.intern("symbolsTest" + name);
+					}
+					return symbols;
+				}));
+			}
+
+			int[] first = results.get(0).get();
+			for (Future<int[]> result : results) {
+				assertArrayEquals(first, result.get());
+			}
+			for (int i = 0; i < names; i++) {
+				assertEquals("symbolsTest" + i, Symbols.name(first[i]));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
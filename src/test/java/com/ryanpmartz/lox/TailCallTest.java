@@ -0,0 +1,21 @@
+package com.ryanpmartz.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class TailCallTest {
+
+	@Test
+	public void testTailCallsRunInConstantStack() {
+		String source = "fun count(n, acc) { if (n == 0) return acc; return count(n - 1, acc + 1); }\n" +
+				"print count(1000000, 0);\n" +
+				"fun isEven(n) { if (n == 0) return true; return isOdd(n - 1); }\n" +
+				"fun isOdd(n) { if (n == 0) return false; return isEven(n - 1); }\n" +
+				"print isEven(100001);";
+
+		assertEquals("1000000\nfalse\n", TestPrograms.run(source, false));
+		assertEquals("1000000\nfalse\n", TestPrograms.run(source, true));
+		assertEquals("1000000\nfalse\n", TestPrograms.runOnVm(TestPrograms.parse(source)));
+	}
+}
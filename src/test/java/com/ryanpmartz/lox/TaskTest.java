@@ -0,0 +1,65 @@
+package com.ryanpmartz.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TaskTest {
+
+	@Test
+	public void testTasksShareGlobalsAndClosures() {
+		String source = "var results = channel();\n" +
+				"fun producer(from) {\n" +
+				"  var sent = 0;\n" +
+				"  fun run() { for (var i = from; i < from + 100; i = i + 1) { send(results, i); sent = sent + 1; } return sent; }\n" +
+				"  return run;\n" +
+				"}\n" +
+				"var tasks = 0;\n" +
+				"var a = spawn(producer(0));\n" +
+				"var b = spawn(producer(100));\n" +
+				"var total = 0;\n" +
+				"for (var i = 0; i < 200; i = i + 1) total = total + receive(results);\n" +
+				"print join(a) + join(b);\n" +
+				"print total;\n" +
+				"fun last() { tasks = tasks + 1; return nil; }\n" +
+				"print join(spawn(last));\n" +
+				"print tasks;";
+
+		assertEquals("200\n19900\nnil\n1\n", run(source).output);
+	}
+
+	@Test
+	public void testJoinRethrowsTheTasksError() {
+		Result result = run("fun fails() {\n  return -\"text\";\n}\nvar task = spawn(fails);\nprint \"spawned\";\njoin(task);");
+
+		assertFalse(result.succeeded);
+		assertEquals("spawned\n", result.output);
+		assertEquals(List.of("Operand must be a number\n[line 2]"), result.errors);
+
+		Result notCallable = run("spawn(\"text\");");
+		assertTrue(notCallable.errors.get(0).startsWith("Can only spawn functions"));
+	}
+
+	private static class Result {
+		boolean succeeded;
+		String output;
+		List<String> errors;
+	}
+
+	private static Result run(String source) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Context context = Engine.compile(source).newContext(new PrintStream(output));
+
+		Result result = new Result();
+		result.succeeded = context.run();
+		result.output = output.toString();
+		result.errors = context.errors();
+		return result;
+	}
+}
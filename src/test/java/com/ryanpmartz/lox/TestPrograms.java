@@ -0,0 +1,56 @@
+package com.ryanpmartz.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+// compiles and runs Lox source for tests. Output goes to a buffer the
+// Interpreter is given rather than System.out, so tests can run in parallel,
+// and it comes back with "\n" line endings.
+final class TestPrograms {
+
+	private TestPrograms() {
+	}
+
+	// scanned, parsed and resolved, as the engines expect, but not optimized
+	static List<Stmt> parse(String source) {
+		List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+		new Resolver().resolve(statements);
+		return statements;
+	}
+
+	static String run(String source) {
+		return run(parse(source), true);
+	}
+
+	static String run(String source, boolean compiling) {
+		return run(parse(source), compiling);
+	}
+
+	static String run(List<Stmt> program) {
+		return run(program, true);
+	}
+
+	// what `program` prints on the tree-walker, up to a runtime error if it
+	// hits one
+	static String run(List<Stmt> program, boolean compiling) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try {
+			new Interpreter(true, compiling, new PrintStream(output)).run(program);
+		} catch (LoxRuntimeError error) {
+			// ends the program like it ends a script; the output so far is the result
+		}
+		return text(output);
+	}
+
+	// what `program` prints on the bytecode VM
+	static String runOnVm(List<Stmt> program) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		new VM(new Interpreter(true, true, new PrintStream(output))).interpret(new BytecodeCompiler().compile(program));
+		return text(output);
+	}
+
+	private static String text(ByteArrayOutputStream output) {
+		return output.toString().replace(System.lineSeparator(), "\n");
+	}
+}
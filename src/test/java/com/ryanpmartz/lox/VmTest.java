@@ -0,0 +1,55 @@
+package com.ryanpmartz.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class VmTest {
+
+	@Test
+	public void testArithmeticAndStrings() {
+		assertSameOutput("print 1 + 2 * 3; print \"a\" + \"b\"; print -(4 / 8); print 1 != 2;");
+	}
+
+	@Test
+	public void testControlFlow() {
+		assertSameOutput("var s = 0;\n" +
+				"for (var i = 0; i < 10; i = i + 1) { if (i > 4 and i != 7) s = s + i; }\n" +
+				"print s; print nil or \"default\"; print false and 1;");
+	}
+
+	@Test
+	public void testRecursion() {
+		assertSameOutput("fun fib(n) { if (n < 2) return n; return fib(n - 2) + fib(n - 1); }\n" +
+				"print fib(15);");
+	}
+
+	@Test
+	public void testClosures() {
+		assertSameOutput("fun makeCounter() { var i = 0; fun count() { i = i + 1; return i; } return count; }\n" +
+				"var a = makeCounter(); var b = makeCounter();\n" +
+				"print a(); print a(); print b();\n" +
+				"fun outer() { var x = \"x\"; fun middle() { fun inner() { return x; } return inner; } return middle(); }\n" +
+				"print outer()();");
+	}
+
+	@Test
+	public void testSpawnReportsThatTheVmDoesntSupportIt() {
+		Interpreter interpreter = new Interpreter();
+		new VM(interpreter).interpret(new BytecodeCompiler().compile(TestPrograms.parse("fun work() { return 1; }")));
+		Object work = interpreter.globals.cell("work").value;
+		LoxCallable spawn = (LoxCallable) interpreter.globals.cell("spawn").value;
+
+		NativeError error = assertThrows(NativeError.class, () -> spawn.call1(interpreter, work));
+		assertEquals("spawn isn't supported by the bytecode VM.", error.getMessage());
+	}
+
+	private void assertSameOutput(String source) {
+		List<Stmt> statements = TestPrograms.parse(source);
+
+		assertEquals(TestPrograms.run(statements), TestPrograms.runOnVm(statements));
+	}
+}